@@ -0,0 +1,88 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import model.Image;
+import model.ImageStore;
+import model.Model;
+
+/**
+ * The `ConvolutionBenchmark` class measures how blur and sharpen scale with the number of threads
+ * filtering an image. Every run is checked against the single-threaded result, which it must
+ * match exactly.
+ */
+public class ConvolutionBenchmark {
+
+  private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args the width and height of the image, and the number of timed runs per thread count.
+   *             They default to 8000, 6000 and 3.
+   */
+  public static void main(String[] args) {
+    int width = args.length > 0 ? Integer.parseInt(args[0]) : 8000;
+    int height = args.length > 1 ? Integer.parseInt(args[1]) : 6000;
+    int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+    Random random = new Random(42);
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt() | 0xFF000000;
+    }
+    Image image = new Image(width, height, pixels);
+    System.out.printf("%dx%d image, %d runs per thread count%n", width, height, runs);
+
+    for (String operation : new String[]{"blur", "sharpen"}) {
+      Image expected = null;
+      double baseline = 0;
+      for (int threads : THREADS) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Model model = new Model(new ImageStore(Long.MAX_VALUE), threads == 1 ? null : pool);
+        model.load("image", image);
+        // Warm up before timing
+        run(model, operation);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+          long start = System.nanoTime();
+          run(model, operation);
+          best = Math.min(best, System.nanoTime() - start);
+        }
+        Image result = model.getImage("result");
+        if (expected == null) {
+          expected = result;
+        } else if (!same(expected, result)) {
+          throw new IllegalStateException(operation + " on " + threads
+              + " threads does not match the single-threaded result.");
+        }
+        double millis = best / 1e6;
+        if (threads == 1) {
+          baseline = millis;
+        }
+        System.out.printf("%-8s %2d threads: %9.1f ms  %5.2fx%n", operation, threads, millis,
+            baseline / millis);
+        pool.shutdown();
+      }
+    }
+  }
+
+  private static void run(Model model, String operation) {
+    if (operation.equals("blur")) {
+      model.blur("image", "result");
+    } else {
+      model.sharpen("image", "result");
+    }
+  }
+
+  private static boolean same(Image a, Image b) {
+    for (int y = 0; y < a.getHeight(); y++) {
+      for (int x = 0; x < a.getWidth(); x++) {
+        if (a.getArgb(x, y) != b.getArgb(x, y)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,95 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+import model.ColorMatrix;
+import model.PixelKernels;
+
+/**
+ * The `PixelKernelsBenchmark` class compares the scalar and vector implementations of the pixel
+ * kernels on identical inputs. Each kernel must give the same output on both paths before its
+ * timings are reported. It must be run with {@code --add-modules jdk.incubator.vector}, otherwise
+ * both paths are scalar.
+ */
+public class PixelKernelsBenchmark {
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args the number of pixels and the number of timed runs per kernel. They default to
+   *             16777216 and 10.
+   */
+  public static void main(String[] args) {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 24;
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+    Random random = new Random(42);
+    int[] pixels = new int[size];
+    int[] channel = new int[size];
+    double[] sums = new double[size];
+    for (int i = 0; i < size; i++) {
+      pixels[i] = random.nextInt();
+      channel[i] = random.nextInt(256);
+      sums[i] = random.nextDouble() * 255;
+    }
+
+    PixelKernels scalar = PixelKernels.scalar();
+    PixelKernels vector = PixelKernels.preferred();
+    System.out.printf("%d pixels, scalar against %s%n", size, vector.getName());
+
+    compare("luma", scalar, vector, runs,
+        (kernels, out) -> kernels.luma(pixels, (int[]) out), () -> new int[size]);
+    compare("sepia", scalar, vector, runs,
+        (kernels, out) -> kernels.transform(pixels, (int[]) out, ColorMatrix.SEPIA),
+        () -> new int[size]);
+    compare("taps, fixed point", scalar, vector, runs,
+        (kernels, out) -> kernels.accumulate(channel, 0, 3, (int[]) out, 0, size),
+        () -> new int[size]);
+    compare("taps, double", scalar, vector, runs,
+        (kernels, out) -> kernels.accumulate(channel, 0, 0.0625, (double[]) out, 0, size),
+        () -> new double[size]);
+    compare("rows, double", scalar, vector, runs,
+        (kernels, out) -> kernels.accumulate(sums, 0, 0.25, (double[]) out, 0, size),
+        () -> new double[size]);
+  }
+
+  private static void compare(String name, PixelKernels scalar, PixelKernels vector, int runs,
+      Loop loop, Output output) {
+    Object expected = output.create();
+    Object actual = output.create();
+    loop.run(scalar, expected);
+    loop.run(vector, actual);
+    if (!Arrays.deepEquals(new Object[]{expected}, new Object[]{actual})) {
+      throw new IllegalStateException(name + " differs between the scalar and vector paths.");
+    }
+    double scalarMillis = time(scalar, loop, output, runs);
+    double vectorMillis = time(vector, loop, output, runs);
+    System.out.printf("%-18s scalar %8.2f ms  vector %8.2f ms  %5.2fx%n", name, scalarMillis,
+        vectorMillis, scalarMillis / vectorMillis);
+  }
+
+  private static double time(PixelKernels kernels, Loop loop, Output output, int runs) {
+    Object out = output.create();
+    // Warm up before timing
+    for (int i = 0; i < 20; i++) {
+      loop.run(kernels, out);
+    }
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i < runs; i++) {
+      long start = System.nanoTime();
+      loop.run(kernels, out);
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return best / 1e6;
+  }
+
+  private interface Loop {
+
+    void run(PixelKernels kernels, Object out);
+  }
+
+  private interface Output {
+
+    Object create();
+  }
+}
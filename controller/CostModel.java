@@ -0,0 +1,172 @@
+package controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The `CostModel` class estimates how long a command takes from the number of pixels it
+ * processes, with a cost in nanoseconds per pixel for each {@link ImageCommandType}. The commands
+ * that convolve are counted in pixels times the taps of their kernel instead, since their time
+ * grows with its size.
+ *
+ * <p>The built-in costs were measured on a single core with images of a million pixels, and are
+ * replaced by the timings of real runs as they are recorded: each cost is the running mean of its
+ * last few measurements, and is kept in a properties file between runs. The measurements are
+ * kept in memory while the program runs, and the file is written once as it quits. The file is
+ * ~/.ime-costs.properties, unless the ime.costs system property names another one. A model may
+ * record from one thread and be saved from another, such as a shutdown hook, so both are
+ * synchronized.
+ */
+final class CostModel {
+
+  // The number of measurements the running mean of a cost spans
+  private static final int WINDOW = 8;
+  // Smaller runs are dominated by fixed costs, so they say little about the cost per pixel
+  private static final long MIN_PIXELS = 1 << 14;
+
+  private static final Map<ImageCommandType, Double> BUILT_IN = new EnumMap<>(
+      ImageCommandType.class);
+
+  static {
+    BUILT_IN.put(ImageCommandType.LOAD, 1000.0);
+    BUILT_IN.put(ImageCommandType.SAVE, 250.0);
+    BUILT_IN.put(ImageCommandType.BRIGHTEN, 5.0);
+    BUILT_IN.put(ImageCommandType.VERTICAL_FLIP, 0.2);
+    BUILT_IN.put(ImageCommandType.HORIZONTAL_FLIP, 0.2);
+    BUILT_IN.put(ImageCommandType.VALUE_COMPONENT, 15.0);
+    BUILT_IN.put(ImageCommandType.RGB_SPLIT, 1.0);
+    BUILT_IN.put(ImageCommandType.RGB_COMBINE, 50.0);
+    BUILT_IN.put(ImageCommandType.SEPIA, 8.0);
+    BUILT_IN.put(ImageCommandType.BLUR, 100.0);
+    BUILT_IN.put(ImageCommandType.SHARPEN, 140.0);
+    BUILT_IN.put(ImageCommandType.INTENSITY_COMPONENT, 10.0);
+    BUILT_IN.put(ImageCommandType.LUMA_COMPONENT, 10.0);
+    BUILT_IN.put(ImageCommandType.RED_COMPONENT, 1.0);
+    BUILT_IN.put(ImageCommandType.GREEN_COMPONENT, 1.0);
+    BUILT_IN.put(ImageCommandType.BLUE_COMPONENT, 1.0);
+    BUILT_IN.put(ImageCommandType.HISTOGRAM, 20.0);
+    BUILT_IN.put(ImageCommandType.COLOR_CORRECT, 11.0);
+    BUILT_IN.put(ImageCommandType.LEVEL_ADJUST, 8.0);
+    BUILT_IN.put(ImageCommandType.COMPRESS, 400.0);
+    BUILT_IN.put(ImageCommandType.CHOP, 1.0);
+    BUILT_IN.put(ImageCommandType.UNDERLAY, 15.0);
+    BUILT_IN.put(ImageCommandType.CONVOLVE, 8.0);
+    BUILT_IN.put(ImageCommandType.BLUR_RADIUS, 16.0);
+    BUILT_IN.put(ImageCommandType.COLOR_MATRIX, 8.0);
+    BUILT_IN.put(ImageCommandType.GAMMA, 5.0);
+    BUILT_IN.put(ImageCommandType.CONTRAST, 5.0);
+    BUILT_IN.put(ImageCommandType.INVERT, 4.0);
+    BUILT_IN.put(ImageCommandType.EVAL, 0.0);
+    BUILT_IN.put(ImageCommandType.COMPONENTS, 12.0);
+  }
+
+  private final Path file;
+  private final Map<ImageCommandType, Double> costs;
+  private final Map<ImageCommandType, Integer> samples;
+  private boolean changed;
+
+  private CostModel(Path file) {
+    this.file = file;
+    this.costs = new EnumMap<>(BUILT_IN);
+    this.samples = new EnumMap<>(ImageCommandType.class);
+  }
+
+  /**
+   * Creates a cost model with the costs kept in the properties file, if there is one, and the
+   * built-in costs otherwise.
+   *
+   * @return the cost model.
+   */
+  static CostModel load() {
+    String name = System.getProperty("ime.costs");
+    Path file = name != null ? Paths.get(name)
+        : Paths.get(System.getProperty("user.home"), ".ime-costs.properties");
+    CostModel model = new CostModel(file);
+    if (Files.isReadable(file)) {
+      Properties properties = new Properties();
+      try (InputStream in = Files.newInputStream(file)) {
+        properties.load(in);
+      } catch (IOException | IllegalArgumentException e) {
+        // An unreadable file only loses the calibration
+        return model;
+      }
+      for (ImageCommandType type : BUILT_IN.keySet()) {
+        String key = key(type);
+        try {
+          double cost = Double.parseDouble(properties.getProperty(key, ""));
+          int count = Integer.parseInt(properties.getProperty(key + ".samples", "1"));
+          if (cost >= 0 && count > 0) {
+            model.costs.put(type, cost);
+            model.samples.put(type, count);
+          }
+        } catch (NumberFormatException e) {
+          // Keep the built-in cost
+        }
+      }
+    }
+    return model;
+  }
+
+  private static String key(ImageCommandType type) {
+    return type.getDescription().toLowerCase();
+  }
+
+  /**
+   * Estimates how long a command takes.
+   *
+   * @param type   the command.
+   * @param pixels the number of pixels it processes, times the taps of its kernel if it convolves.
+   * @return the estimated time in nanoseconds, or -1 if the command has no cost.
+   */
+  synchronized long estimate(ImageCommandType type, long pixels) {
+    Double cost = costs.get(type);
+    return cost == null ? -1 : Math.round(cost * pixels);
+  }
+
+  /**
+   * Records how long a run of a command took. The first measurement of a command replaces its
+   * built-in cost.
+   *
+   * @param type   the command.
+   * @param pixels the number of pixels it processed, times the taps of its kernel if it convolves.
+   * @param nanos  the time it took, in nanoseconds.
+   */
+  synchronized void record(ImageCommandType type, long pixels, long nanos) {
+    if (pixels < MIN_PIXELS || !costs.containsKey(type)) {
+      return;
+    }
+    int count = Math.min(samples.getOrDefault(type, 0) + 1, WINDOW);
+    double measured = (double) nanos / pixels;
+    costs.put(type, costs.get(type) + (measured - costs.get(type)) / count);
+    samples.put(type, count);
+    changed = true;
+  }
+
+  /**
+   * Writes the costs to the properties file, if they changed since it was read or written.
+   *
+   * @throws IOException if the file cannot be written.
+   */
+  synchronized void save() throws IOException {
+    if (!changed) {
+      return;
+    }
+    Properties properties = new Properties();
+    for (Map.Entry<ImageCommandType, Integer> sample : samples.entrySet()) {
+      String key = key(sample.getKey());
+      properties.setProperty(key, String.valueOf(costs.get(sample.getKey())));
+      properties.setProperty(key + ".samples", String.valueOf(sample.getValue()));
+    }
+    try (OutputStream out = Files.newOutputStream(file)) {
+      properties.store(out, "Nanoseconds per pixel of each command, measured on real runs");
+    }
+    changed = false;
+  }
+}
@@ -25,6 +25,8 @@ public class GUIController extends IMEController implements Features {
   public void setView() {
     //provide view with all the callbacks
     IGUIView.addFeatures(this);
+    // Closing the window exits the program, so the calibration is written on the way out
+    Runtime.getRuntime().addShutdownHook(new Thread(this::saveCosts));
   }
 
   @Override
@@ -140,7 +142,7 @@ public class GUIController extends IMEController implements Features {
     runCommand("chop "+percentage+" "+index + ++index);
     runCommand("underlay "+ index +" "+ (index-1));
     IGUIView.showImage(String.valueOf(index));
-    IGUIView.showHistogram("h-"+(index-1));
+    IGUIView.showHistogram(String.valueOf(index-1));
 
 
 
@@ -148,8 +150,8 @@ public class GUIController extends IMEController implements Features {
   }
   private void show() throws IOException, InstantiationException, IllegalAccessException {
     IGUIView.showImage(String.valueOf(index));
-    runCommand("histogram "+ index+" "+"h-"+index);
-    IGUIView.showHistogram("h-"+index);
+    // The view draws the counts itself, so no chart image is stored per action
+    IGUIView.showHistogram(String.valueOf(index));
 
   }
 
@@ -2,15 +2,23 @@ package controller;
 
 import controller.commands.BlueComponent;
 import controller.commands.Blur;
+import controller.commands.BlurRadius;
 import controller.commands.Brighten;
 import controller.commands.Chop;
 import controller.commands.ColorCorrect;
+import controller.commands.ColorMatrixTransform;
 import controller.commands.Command;
+import controller.commands.Components;
 import controller.commands.Compress;
+import controller.commands.Contrast;
+import controller.commands.Convolve;
+import controller.commands.Eval;
+import controller.commands.Gamma;
 import controller.commands.GreenComponent;
 import controller.commands.Histogram;
 import controller.commands.HorizontalFlip;
 import controller.commands.IntensityComponent;
+import controller.commands.Invert;
 import controller.commands.LevelsAdjust;
 import controller.commands.Load;
 import controller.commands.LumaComponent;
@@ -28,12 +36,17 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Scanner;
 import model.IModel;
+import model.LazyModel;
+import model.PointChain;
+import model.Region;
 import view.View;
 
 /**
@@ -45,6 +58,10 @@ public class IMEController implements Controller {
   final Scanner inputSource;
   protected View view;
   protected IModel model;
+  private final Appendable out;
+  // Estimates the cost of each command, and learns from the time each one takes
+  private final CostModel costs = CostModel.load();
+  private final ScriptEstimator estimator = new ScriptEstimator(costs);
   protected final Map<ImageCommandType, Command> commandMap = getCommands();
   private String input = "";
 
@@ -58,9 +75,23 @@ public class IMEController implements Controller {
    */
   public IMEController(Readable inputSource, View view,
       IModel model) {
+    this(inputSource, view, model, System.out);
+  }
+
+  /**
+   * Constructs an `controller.IMEController` that prints reports, such as the plan of a script
+   * run with --explain, to the given output.
+   *
+   * @param inputSource The source for user input.
+   * @param view        The view for displaying information.
+   * @param model       The model class for image processing.
+   * @param out         The output reports are printed to.
+   */
+  public IMEController(Readable inputSource, View view, IModel model, Appendable out) {
     this.view = view;
     this.inputSource = new Scanner(inputSource);
     this.model = model;
+    this.out = out;
   }
 
   public IMEController(View view,
@@ -68,6 +99,7 @@ public class IMEController implements Controller {
     this.inputSource = null;
     this.view = view;
     this.model = model;
+    this.out = System.out;
 
 
   }
@@ -82,7 +114,16 @@ public class IMEController implements Controller {
   public void start(String[] args) throws IOException {
     if (args != null) {
       if (args.length == 1) {
-        runScript(args[0]);
+        // Nothing runs after a script given on the command line, so its intermediate images
+        // need not be kept
+        try {
+          runScript(args[0], true);
+        } finally {
+          saveCosts();
+        }
+        return;
+      } else if (args.length == 2 && args[1].equals("--explain")) {
+        explainScript(args[0]);
         return;
       } else if (args.length > 1) {
         try {
@@ -100,11 +141,11 @@ public class IMEController implements Controller {
         if (input.equals("script")) {
           updateView();
           String filePath = input;
-          runScript(filePath);
+          runScript(filePath, false);
           continue;
         }
         if (Objects.equals(input, "quit")) {
-          return;
+          break;
         }
 
         runCommand(input);
@@ -114,6 +155,8 @@ public class IMEController implements Controller {
         view.showError(String.valueOf(e));
       }
     }
+    // The calibration is kept in memory while the session runs, and written once as it ends
+    saveCosts();
   }
 
   private String readInput() {
@@ -127,42 +170,86 @@ public class IMEController implements Controller {
     input = readInput();
   }
 
-  private void runScript(String filePath) throws IOException {
-    File file = new File(filePath);
-
-    if (!file.isAbsolute()) {
-      String currentDir = System.getProperty("user.dir");
-      file = new File(currentDir, filePath);
-    }
+  /**
+   * Runs the commands of a script file one line at a time.
+   *
+   * @param filePath the path of the script.
+   * @param optimize whether nothing runs after the script, so that it may be rewritten by a
+   *                 {@link ScriptOptimizer}, and runs of per-pixel operations whose intermediate
+   *                 images are never referenced again may be computed in a single pass, without
+   *                 storing those images.
+   */
+  private void runScript(String filePath, boolean optimize) throws IOException {
     int line_number = 0;
-    filePath = file.getAbsolutePath();
-
-    //Read script file one by one and call command parser
-    // Error - arraylist.addFront - line and error or file couldn't be loaded
     try {
-      if (!(new File(filePath).isFile() && validFile(filePath))) {
-        throw new FileNotFoundException("The specified file in load not valid.");
+      List<String> lines = readScript(filePath);
+      if (optimize) {
+        lines = new ScriptOptimizer(lines).getLines();
       }
-      try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-        String line;
-        while (true) {
-
-          line = reader.readLine();
-          if (line == null) {
-            break;
+      while (line_number < lines.size()) {
+        PointRun run = optimize ? PointRun.find(lines, line_number) : null;
+        if (run != null && runFused(run)) {
+          // The lines ran together, so only the sizes of their images are followed
+          for (int i = 0; i < run.getLength(); i++) {
+            estimator.estimate(lines.get(line_number + i));
           }
-          line_number++;
-          runCommand(line);
+          line_number += run.getLength();
+          continue;
         }
-      } catch (IOException e) {
-        view.showError("Error in the file at line " + line_number + e);
-      } catch (InstantiationException | IllegalAccessException e) {
-        throw new RuntimeException(e);
+        line_number++;
+        runCommand(lines.get(line_number - 1));
       }
+    } catch (FileNotFoundException e) {
+      view.showError(String.valueOf(e));
+    } catch (IOException e) {
+      view.showError("Error in the file at line " + line_number + e);
+    } catch (InstantiationException | IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
 
+  /**
+   * Prints a script as it is written and as it would run after being optimized, without running
+   * it.
+   *
+   * @param filePath the path of the script.
+   */
+  private void explainScript(String filePath) throws IOException {
+    try {
+      out.append(new ScriptOptimizer(readScript(filePath)).explain());
     } catch (FileNotFoundException e) {
       view.showError(String.valueOf(e));
+    }
+  }
+
+  private List<String> readScript(String filePath) throws IOException {
+    File file = new File(filePath);
 
+    if (!file.isAbsolute()) {
+      String currentDir = System.getProperty("user.dir");
+      file = new File(currentDir, filePath);
+    }
+    filePath = file.getAbsolutePath();
+    if (!(new File(filePath).isFile() && validFile(filePath))) {
+      throw new FileNotFoundException("The specified file in load not valid.");
+    }
+    List<String> lines = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
+  private boolean runFused(PointRun run) {
+    try {
+      model.applyChain(run.getChain(), run.getSource(), run.getTarget());
+      return true;
+    } catch (Exception e) {
+      // Nothing was stored, so running the lines one by one reports the error as usual
+      return false;
     }
   }
 
@@ -174,6 +261,40 @@ public class IMEController implements Controller {
 
   protected void runCommand(String command)
       throws IOException, InstantiationException, IllegalAccessException {
+    ScriptEstimator.Estimate estimate = estimator.estimate(command);
+    long start = System.nanoTime();
+    if (dispatch(command)) {
+      record(estimate, System.nanoTime() - start);
+    }
+  }
+
+  private void record(ScriptEstimator.Estimate estimate, long nanos) {
+    // A lazy model computes an image when it is needed, so the time of a line says nothing
+    if (estimate.getPixels() < 0 || model instanceof LazyModel) {
+      return;
+    }
+    costs.record(estimate.getType(), estimate.getWork(), nanos);
+  }
+
+  /**
+   * Writes the calibration of the cost model, if it changed during this session.
+   */
+  protected void saveCosts() {
+    try {
+      costs.save();
+    } catch (IOException e) {
+      // The calibration is only lost, and commands run as before
+    }
+  }
+
+  /**
+   * Runs a command.
+   *
+   * @param command the command.
+   * @return whether the command succeeded.
+   */
+  private boolean dispatch(String command)
+      throws IOException, InstantiationException, IllegalAccessException {
     String[] tokens = command.split(" ");
     String params;
     String[] args;
@@ -193,17 +314,20 @@ public class IMEController implements Controller {
         if (!flag) {
           throw new IllegalArgumentException("Unknown command: " + command);
         }
+        if (dispatchSplit(commandType, tokens)) {
+          return true;
+        }
         args = (Arrays.copyOfRange(tokens, tokens.length - 4, tokens.length));
         params = String.join(" ", args);
         new Chop().runCommand(params, model);
 
         tokens[tokens.length - 4] = tokens[tokens.length - 3];
         String new_command = String.join(" ", Arrays.copyOfRange(tokens, 0, tokens.length - 2));
-        runCommand(new_command);
+        boolean succeeded = dispatch(new_command);
         tokens = command.split(" ");
         String combine_command = tokens[tokens.length - 3] + " " + tokens[tokens.length - 4];
         new Underlay().runCommand(combine_command, model);
-        return;
+        return succeeded;
       }
     }
 
@@ -216,10 +340,73 @@ public class IMEController implements Controller {
     } catch (IllegalArgumentException e) {
       throw new IllegalArgumentException("Unknown command: " + commandStr);
     }
+    if (commandType == ImageCommandType.EXPLAIN) {
+      explainCosts(params);
+      return false;
+    }
     try {
       commandMap.get(commandType).runCommand(params, model);
+      return true;
     } catch (Exception e) {
       view.showError("Unknown Command");
+      return false;
+    }
+  }
+
+  /**
+   * Runs a command with the split option on the region it selects, so only the columns of the
+   * preview are computed, from the pixels around them as well.
+   *
+   * @param type   the command.
+   * @param tokens the tokens of the line, ending with the source, the destination, split and the
+   *               percentage.
+   * @return whether the command ran, or false if it is not valid, in which case it runs on a
+   *     chopped copy of its source, which reports the error.
+   */
+  private boolean dispatchSplit(ImageCommandType type, String[] tokens) {
+    int count = tokens.length;
+    if (count < 5 || !tokens[count - 2].equals("split")) {
+      return false;
+    }
+    String src = tokens[count - 4];
+    String dest = tokens[count - 3];
+    Region region = Region.leftColumns(Float.parseFloat(tokens[count - 1]));
+    switch (type) {
+      case BLUR:
+      case SHARPEN:
+      case VALUE_COMPONENT:
+        if (count != 5) {
+          return false;
+        }
+        if (type == ImageCommandType.BLUR) {
+          model.blur(src, dest, region);
+        } else if (type == ImageCommandType.SHARPEN) {
+          model.sharpen(src, dest, region);
+        } else {
+          model.valueComponent(src, dest, region);
+        }
+        return true;
+      default:
+        PointChain chain = PointRun.chainOf(String.join(" ", Arrays.copyOf(tokens, count - 2)));
+        if (chain == null) {
+          return false;
+        }
+        model.applyChain(chain, src, dest, region);
+        return true;
+    }
+  }
+
+  /**
+   * Prints the estimated cost of every line of a script, without running it. The images the
+   * commands run so far have left behind are known to the script.
+   *
+   * @param filePath the path of the script.
+   */
+  private void explainCosts(String filePath) throws IOException {
+    try {
+      out.append(new ScriptEstimator(estimator).explain(readScript(filePath)));
+    } catch (FileNotFoundException e) {
+      view.showError(String.valueOf(e));
     }
   }
 
@@ -269,6 +456,22 @@ public class IMEController implements Controller {
         (params, model) -> new Chop().runCommand(params, model));
     commandMap.put(ImageCommandType.UNDERLAY,
         (params, model) -> new Underlay().runCommand(params, model));
+    commandMap.put(ImageCommandType.CONVOLVE,
+        (params, model) -> new Convolve().runCommand(params, model));
+    commandMap.put(ImageCommandType.BLUR_RADIUS,
+        (params, model) -> new BlurRadius().runCommand(params, model));
+    commandMap.put(ImageCommandType.COLOR_MATRIX,
+        (params, model) -> new ColorMatrixTransform().runCommand(params, model));
+    commandMap.put(ImageCommandType.GAMMA,
+        (params, model) -> new Gamma().runCommand(params, model));
+    commandMap.put(ImageCommandType.CONTRAST,
+        (params, model) -> new Contrast().runCommand(params, model));
+    commandMap.put(ImageCommandType.INVERT,
+        (params, model) -> new Invert().runCommand(params, model));
+    commandMap.put(ImageCommandType.EVAL,
+        (params, model) -> new Eval().runCommand(params, model));
+    commandMap.put(ImageCommandType.COMPONENTS,
+        (params, model) -> new Components().runCommand(params, model));
 
     return commandMap;
 
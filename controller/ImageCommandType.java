@@ -26,6 +26,15 @@ public enum ImageCommandType {
   COMPRESS("compress"),
   CHOP("chop"),
   UNDERLAY("underlay"),
+  CONVOLVE("convolve"),
+  BLUR_RADIUS("blur-radius"),
+  COLOR_MATRIX("color-matrix"),
+  GAMMA("gamma"),
+  CONTRAST("contrast"),
+  INVERT("invert"),
+  EVAL("eval"),
+  EXPLAIN("explain"),
+  COMPONENTS("components"),
 
   UNKNOWN("Unknown");
 
@@ -2,8 +2,10 @@ package controller;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import model.ConcurrentModel;
+import model.IModel;
 import model.IROModel;
-import model.Model;
+import model.LazyModel;
 import model.ROModel;
 import view.GUIView;
 import view.IMEView;
@@ -21,7 +23,8 @@ public class Main {
    */
   public static void main(String[] args) throws IOException {
     //IMEView view = new IMEView(System.out);
-    Model model = new Model();
+    // With -Dime.lazy=true, operations are only computed when their results are shown or saved
+    IModel model = Boolean.getBoolean("ime.lazy") ? new LazyModel() : new ConcurrentModel();
     IROModel rom = new ROModel(model);
     GUIView guiView = new GUIView(rom);
     //IMEController controller = new IMEController(new InputStreamReader(System.in),
@@ -0,0 +1,206 @@
+package controller;
+
+import controller.commands.ColorMatrixTransform;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import model.ColorMatrix;
+import model.PointChain;
+import model.PointOperation;
+
+/**
+ * The `PointRun` class represents consecutive lines of a script that apply per-pixel operations
+ * one to the result of the other, where no later line refers to the images between them. Such a
+ * run is handed to the model as one {@link PointChain}, which computes it in a single pass and
+ * stores only the image named by its last line.
+ */
+final class PointRun {
+
+  private final PointChain chain;
+  private final String source;
+  private final String target;
+  private final int length;
+
+  private PointRun(PointChain chain, String source, String target, int length) {
+    this.chain = chain;
+    this.source = source;
+    this.target = target;
+    this.length = length;
+  }
+
+  PointChain getChain() {
+    return chain;
+  }
+
+  String getSource() {
+    return source;
+  }
+
+  String getTarget() {
+    return target;
+  }
+
+  /**
+   * Gets the number of lines of the run.
+   *
+   * @return the number of lines.
+   */
+  int getLength() {
+    return length;
+  }
+
+  /**
+   * Finds the longest run starting at a line of a script.
+   *
+   * @param lines the lines of the script.
+   * @param start the index of the first line of the run.
+   * @return the run, or null if fewer than two lines starting there can be fused.
+   */
+  static PointRun find(List<String> lines, int start) {
+    PointChain chain = new PointChain();
+    String source = null;
+    String target = null;
+    int end = start;
+    for (int i = start; i < lines.size(); i++) {
+      Step step = Step.parse(lines.get(i));
+      if (step == null) {
+        break;
+      }
+      if (i == start) {
+        source = step.source;
+      } else if (!step.source.equals(target)
+          || !step.target.equals(target) && isReferenced(lines, i + 1, target)) {
+        // Not a continuation, or the image before the step is still read later. A step writing
+        // its source in place hides that image from every later line.
+        break;
+      }
+      chain = step.append.apply(chain);
+      target = step.target;
+      end = i + 1;
+    }
+    return end - start < 2 ? null : new PointRun(chain, source, target, end - start);
+  }
+
+  /**
+   * Parses a line of a script applying a per-pixel operation into a chain of one step.
+   *
+   * @param line the line, without the split option.
+   * @return the chain, or null if the line is not a valid per-pixel operation.
+   */
+  static PointChain chainOf(String line) {
+    Step step = Step.parse(line);
+    return step == null ? null : step.append.apply(new PointChain());
+  }
+
+  private static boolean isReferenced(List<String> lines, int from, String name) {
+    for (int i = from; i < lines.size(); i++) {
+      String[] tokens = lines.get(i).split(" ");
+      for (int k = 1; k < tokens.length; k++) {
+        if (tokens[k].equals(name)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A line of a script that applies a per-pixel operation.
+   */
+  private static final class Step {
+
+    private final UnaryOperator<PointChain> append;
+    private final String source;
+    private final String target;
+
+    private Step(UnaryOperator<PointChain> append, String source, String target) {
+      this.append = append;
+      this.source = source;
+      this.target = target;
+    }
+
+    /**
+     * Parses a line of a script.
+     *
+     * @return the step, or null if the line is not a valid per-pixel operation, in which case
+     *     running it on its own reports the error.
+     */
+    private static Step parse(String line) {
+      String[] tokens = line.split(" ");
+      for (String token : tokens) {
+        if (token.equals("split")) {
+          return null;
+        }
+      }
+      try {
+        return parse(ImageCommandType.fromString(tokens[0]), tokens);
+      } catch (Exception e) {
+        return null;
+      }
+    }
+
+    private static Step parse(ImageCommandType type, String[] tokens) throws Exception {
+      switch (type) {
+        case BRIGHTEN:
+          return operation(tokens, PointOperation.brighten(Float.parseFloat(tokens[1])));
+        case GAMMA:
+          return operation(tokens, PointOperation.gamma(Double.parseDouble(tokens[1])));
+        case CONTRAST:
+          return operation(tokens, PointOperation.contrast(Double.parseDouble(tokens[1])));
+        case LEVEL_ADJUST:
+          if (tokens.length != 6) {
+            return null;
+          }
+          int b = Integer.parseInt(tokens[1]);
+          int m = Integer.parseInt(tokens[2]);
+          int w = Integer.parseInt(tokens[3]);
+          if (b < 0 || w > 255 || b > m || m > w) {
+            return null;
+          }
+          return new Step(chain -> chain.then(PointOperation.levels(b, m, w)), tokens[4],
+              tokens[5]);
+        case INVERT:
+          return component(tokens, PointOperation.INVERT);
+        case RED_COMPONENT:
+          return component(tokens, PointOperation.component(0));
+        case GREEN_COMPONENT:
+          return component(tokens, PointOperation.component(1));
+        case BLUE_COMPONENT:
+          return component(tokens, PointOperation.component(2));
+        case COLOR_CORRECT:
+          return tokens.length == 3
+              ? new Step(PointChain::thenColorCorrect, tokens[1], tokens[2]) : null;
+        case SEPIA:
+          return matrix(tokens, ColorMatrix.SEPIA);
+        case LUMA_COMPONENT:
+          return matrix(tokens, ColorMatrix.LUMA);
+        case INTENSITY_COMPONENT:
+          return matrix(tokens, ColorMatrix.INTENSITY);
+        case COLOR_MATRIX:
+          if (tokens.length != 4) {
+            return null;
+          }
+          ColorMatrix matrix = new ColorMatrixTransform().readMatrix(tokens[1]);
+          return new Step(chain -> chain.then(matrix), tokens[2], tokens[3]);
+        default:
+          return null;
+      }
+    }
+
+    // A command with one parameter before its source and destination
+    private static Step operation(String[] tokens, PointOperation operation) {
+      return tokens.length == 4
+          ? new Step(chain -> chain.then(operation), tokens[2], tokens[3]) : null;
+    }
+
+    // A command with only a source and a destination
+    private static Step component(String[] tokens, PointOperation operation) {
+      return tokens.length == 3
+          ? new Step(chain -> chain.then(operation), tokens[1], tokens[2]) : null;
+    }
+
+    private static Step matrix(String[] tokens, ColorMatrix matrix) {
+      return tokens.length == 3
+          ? new Step(chain -> chain.then(matrix), tokens[1], tokens[2]) : null;
+    }
+  }
+}
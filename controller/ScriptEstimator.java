@@ -0,0 +1,454 @@
+package controller;
+
+import controller.commands.Components;
+import controller.commands.Convolve;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import model.ColorComponent;
+import model.Kernel;
+
+/**
+ * The `ScriptEstimator` class follows the lines of a script without running them, and estimates
+ * what each one costs: the number of pixels it processes, the bytes it allocates and, from a
+ * {@link CostModel}, the time it takes. The size of every named image is tracked from line to
+ * line, starting from the headers of the files the script loads, which are read without decoding
+ * the pixels.
+ *
+ * <p>An estimator may also follow commands as they run, so that their measured times can be
+ * recorded against the number of pixels they processed.
+ */
+final class ScriptEstimator {
+
+  // The size of the image histogram draws
+  private static final int HISTOGRAM_SIZE = 256;
+  // Blur-radius convolves with a Gaussian kernel below this sigma, and runs box blurs from it on
+  private static final double BOX_SIGMA = 2;
+  // Three box blurs each way, each costing about a tap per pixel whatever the radius
+  private static final int BOX_TAPS = 6;
+
+  private final CostModel costs;
+  private final Map<String, int[]> sizes;
+
+  /**
+   * Constructs an estimator that knows the size of no image yet.
+   *
+   * @param costs the cost model the times are estimated with.
+   */
+  ScriptEstimator(CostModel costs) {
+    this.costs = costs;
+    this.sizes = new HashMap<>();
+  }
+
+  /**
+   * Constructs an estimator that starts from the image sizes another one knows.
+   *
+   * @param other the estimator whose sizes are copied.
+   */
+  ScriptEstimator(ScriptEstimator other) {
+    this.costs = other.costs;
+    this.sizes = new HashMap<>(other.sizes);
+  }
+
+  /**
+   * Estimates the cost of a line, and notes the sizes of the images it writes.
+   *
+   * @param line the line.
+   * @return the estimate, whose pixel count is -1 if the size of an image it reads is unknown.
+   */
+  Estimate estimate(String line) {
+    String[] tokens = line.split(" ");
+    ImageCommandType type = ImageCommandType.fromString(tokens[0]);
+    double fraction = 1;
+    int split = Arrays.asList(tokens).indexOf("split");
+    if (split > 0 && split == tokens.length - 2) {
+      // Only the chopped part is processed, and the result has the size of the source
+      try {
+        fraction = Float.parseFloat(tokens[split + 1]) / 100;
+      } catch (NumberFormatException e) {
+        return unknown(type);
+      }
+      tokens = Arrays.copyOf(tokens, split);
+    }
+    try {
+      return estimate(type, tokens, fraction);
+    } catch (RuntimeException e) {
+      // A line that cannot be parsed fails when it runs, and computes nothing
+      return unknown(type);
+    }
+  }
+
+  private Estimate estimate(ImageCommandType type, String[] tokens, double fraction) {
+    int count = tokens.length;
+    switch (type) {
+      case LOAD: {
+        String name = tokens[count - 1];
+        int[] size = readSize(String.join(" ", Arrays.copyOfRange(tokens, 1, count - 1)));
+        return write(type, size, size, 4, name);
+      }
+      case SAVE:
+        return cost(type, size(tokens[count - 1]), 4);
+      case EVAL:
+        return cost(type, size(tokens[1]), 0);
+      case BRIGHTEN:
+        if (Float.parseFloat(tokens[1]) == 0) {
+          // Brightening by 0 only shares the stored image, so its time is not that of brightening
+          Estimate copy = write(ImageCommandType.UNKNOWN, size(tokens[2]), size(tokens[2]), 0,
+              tokens[3]);
+          return new Estimate(copy.type, copy.pixels, copy.bytes, copy.pixels < 0 ? -1 : 0);
+        }
+        return perPixel(type, tokens[2], tokens[3], fraction, 4);
+      case GAMMA:
+      case CONTRAST:
+      case COLOR_MATRIX:
+        return perPixel(type, tokens[2], tokens[3], fraction, 4);
+      case CONVOLVE: {
+        Kernel kernel;
+        try {
+          kernel = new Kernel(Convolve.readKernel(tokens[1]));
+        } catch (IOException e) {
+          return unknown(type);
+        }
+        return perTap(type, tokens[2], tokens[3], fraction, 3, kernel.taps());
+      }
+      case BLUR_RADIUS: {
+        double sigma = Double.parseDouble(tokens[1]);
+        int taps = sigma > 0 && sigma < BOX_SIGMA ? Kernel.gaussian(sigma).taps() : BOX_TAPS;
+        return perTap(type, tokens[2], tokens[3], fraction, 6, taps);
+      }
+      case COMPRESS: {
+        int[] size = size(tokens[2]);
+        int padded = 1;
+        while (size != null && padded < Math.max(size[0], size[1])) {
+          padded *= 2;
+        }
+        // The coefficients of a channel and their sorted magnitudes, in doubles reused for each
+        int[] work = size == null ? null : new int[]{padded, padded};
+        return write(type, work, size, 2 * 8, tokens[3]);
+      }
+      case LEVEL_ADJUST:
+        return perPixel(type, tokens[4], tokens[5], fraction, 4);
+      case VERTICAL_FLIP:
+      case HORIZONTAL_FLIP:
+        return perPixel(type, tokens[1], tokens[2], fraction, 0);
+      case BLUR:
+      case SHARPEN:
+        return perPixel(type, tokens[1], tokens[2], fraction, 3);
+      case VALUE_COMPONENT:
+      case INTENSITY_COMPONENT:
+      case LUMA_COMPONENT:
+      case RED_COMPONENT:
+      case GREEN_COMPONENT:
+      case BLUE_COMPONENT:
+      case SEPIA:
+      case COLOR_CORRECT:
+      case INVERT:
+        return perPixel(type, tokens[1], tokens[2], fraction, 4);
+      case HISTOGRAM: {
+        Estimate estimate = write(type, size(tokens[1]), new int[]{HISTOGRAM_SIZE, HISTOGRAM_SIZE},
+            0, tokens[2]);
+        // The chart is drawn into an image, which is then copied
+        return new Estimate(type, estimate.pixels, 8L * HISTOGRAM_SIZE * HISTOGRAM_SIZE,
+            estimate.nanos);
+      }
+      case CHOP: {
+        int[] size = size(tokens[1]);
+        float percentage = Float.parseFloat(tokens[4]);
+        int[] chopped = size == null ? null
+            : new int[]{(int) Math.ceil(size[0] * (percentage / 100)), size[1]};
+        return write(type, chopped, chopped, 0, tokens[2]);
+      }
+      case UNDERLAY: {
+        // The result has the size of the second image, whose columns fill in the first
+        int[] size = size(tokens[2]);
+        return write(type, size, size, 4, tokens[1]);
+      }
+      case RGB_SPLIT: {
+        int[] size = size(tokens[1]);
+        write(type, size, size, 0, tokens[2]);
+        write(type, size, size, 0, tokens[3]);
+        return write(type, size, size, 3 * 4, tokens[4]);
+      }
+      case RGB_COMBINE: {
+        int[] size = size(tokens[2]);
+        return write(type, size, size, 4, tokens[1]);
+      }
+      case COMPONENTS: {
+        int[] size = size(tokens[1]);
+        ColorComponent[] components = Components.parseComponents(
+            Arrays.copyOfRange(tokens, 3, count));
+        String[] dests = Components.destinations(tokens[2], components);
+        // Only the value, intensity and luma components are new pixels, the channels are views
+        Set<ColorComponent> greys = EnumSet.copyOf(Arrays.asList(components));
+        greys.retainAll(EnumSet.of(ColorComponent.VALUE, ColorComponent.INTENSITY,
+            ColorComponent.LUMA));
+        for (int i = 0; i < dests.length - 1; i++) {
+          write(type, size, size, 0, dests[i]);
+        }
+        return write(type, size, size, 4 * greys.size(), dests[dests.length - 1]);
+      }
+      default:
+        return unknown(type);
+    }
+  }
+
+  private Estimate perPixel(ImageCommandType type, String src, String dest, double fraction,
+      int bytesPerPixel) {
+    return perTap(type, src, dest, fraction, bytesPerPixel, 1);
+  }
+
+  /**
+   * Estimates a line whose time grows with the number of kernel weights each pixel is computed
+   * from, and whose cost is therefore per pixel and tap.
+   *
+   * @param type          the command of the line.
+   * @param src           the name of the image processed.
+   * @param dest          the name of the image written.
+   * @param fraction      the fraction of the image processed.
+   * @param bytesPerPixel the bytes allocated per pixel processed.
+   * @param taps          the number of weights each pixel is computed from.
+   * @return the estimate.
+   */
+  private Estimate perTap(ImageCommandType type, String src, String dest, double fraction,
+      int bytesPerPixel, int taps) {
+    int[] size = size(src);
+    Estimate estimate = write(type, size, size, bytesPerPixel, dest);
+    if (estimate.pixels < 0) {
+      return estimate;
+    }
+    long pixels = Math.round(estimate.pixels * fraction);
+    long work = pixels * taps;
+    return new Estimate(type, pixels, Math.round(estimate.bytes * fraction), work,
+        costs.estimate(type, work));
+  }
+
+  /**
+   * Estimates a line writing an image, and notes its size.
+   *
+   * @param type          the command of the line.
+   * @param processed     the size of the image the line processes, or null if it is unknown.
+   * @param written       the size of the image the line writes, or null if it is unknown.
+   * @param bytesPerPixel the bytes allocated per pixel processed.
+   * @param dest          the name of the image written.
+   * @return the estimate.
+   */
+  private Estimate write(ImageCommandType type, int[] processed, int[] written, int bytesPerPixel,
+      String dest) {
+    if (written == null) {
+      sizes.remove(dest);
+    } else {
+      sizes.put(dest, written);
+    }
+    return cost(type, processed, bytesPerPixel);
+  }
+
+  private Estimate cost(ImageCommandType type, int[] size, int bytesPerPixel) {
+    if (size == null) {
+      return unknown(type);
+    }
+    long pixels = (long) size[0] * size[1];
+    return new Estimate(type, pixels, pixels * bytesPerPixel, costs.estimate(type, pixels));
+  }
+
+  private static Estimate unknown(ImageCommandType type) {
+    return new Estimate(type, -1, -1, -1);
+  }
+
+  private int[] size(String name) {
+    return sizes.get(name);
+  }
+
+  /**
+   * Reads the width and height of an image from the header of its file.
+   *
+   * @param path the path of the file, relative to the working directory if it is not absolute.
+   * @return the width and height, or null if they cannot be read.
+   */
+  static int[] readSize(String path) {
+    File file = new File(path);
+    if (!file.isAbsolute()) {
+      file = new File(System.getProperty("user.dir"), path);
+    }
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      if (file.getName().toLowerCase().endsWith(".ppm")) {
+        return readPpmSize(file);
+      }
+      try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+        Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+        if (readers == null || !readers.hasNext()) {
+          return null;
+        }
+        ImageReader reader = readers.next();
+        try {
+          reader.setInput(in, true, true);
+          return new int[]{reader.getWidth(0), reader.getHeight(0)};
+        } finally {
+          reader.dispose();
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static int[] readPpmSize(File file) throws IOException {
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+      String magic = nextToken(in);
+      if (!"P3".equals(magic) && !"P6".equals(magic)) {
+        return null;
+      }
+      return new int[]{Integer.parseInt(nextToken(in)), Integer.parseInt(nextToken(in))};
+    }
+  }
+
+  // Reads the next whitespace-separated token of a PPM header, skipping comments
+  private static String nextToken(InputStream in) throws IOException {
+    StringBuilder token = new StringBuilder();
+    int c = in.read();
+    while (c != -1) {
+      if (c == '#') {
+        while (c != -1 && c != '\n') {
+          c = in.read();
+        }
+      } else if (Character.isWhitespace(c)) {
+        if (token.length() > 0) {
+          break;
+        }
+      } else {
+        token.append((char) c);
+      }
+      c = in.read();
+    }
+    return token.toString();
+  }
+
+  /**
+   * Estimates the cost of every line of a script, and describes them as a table.
+   *
+   * @param lines the lines of the script.
+   * @return the table, with a row per line and the totals of the script.
+   */
+  String explain(List<String> lines) {
+    StringBuilder table = new StringBuilder(String.format("%5s  %13s  %10s  %10s  %s%n", "line",
+        "pixels", "allocated", "time", "command"));
+    long pixels = 0;
+    long bytes = 0;
+    long nanos = 0;
+    boolean complete = true;
+    for (int i = 0; i < lines.size(); i++) {
+      Estimate estimate = estimate(lines.get(i));
+      table.append(String.format("%5d  %13s  %10s  %10s  %s%n", i + 1,
+          estimate.pixels < 0 ? "?" : String.format("%,d", estimate.pixels),
+          formatBytes(estimate.bytes), formatNanos(estimate.nanos), lines.get(i)));
+      if (estimate.pixels < 0 || estimate.nanos < 0) {
+        complete = false;
+      } else {
+        pixels += estimate.pixels;
+        bytes += estimate.bytes;
+        nanos += estimate.nanos;
+      }
+    }
+    table.append(String.format("%5s  %13s  %10s  %10s%s%n", "total", String.format("%,d", pixels),
+        formatBytes(bytes), formatNanos(nanos), complete ? "" : "  (lines marked ? not counted)"));
+    return table.toString();
+  }
+
+  private static String formatBytes(long bytes) {
+    if (bytes < 0) {
+      return "?";
+    }
+    if (bytes < 1024) {
+      return bytes + " B";
+    }
+    String[] units = {"KiB", "MiB", "GiB", "TiB"};
+    double value = bytes / 1024.0;
+    int unit = 0;
+    while (value >= 1024 && unit < units.length - 1) {
+      value /= 1024;
+      unit++;
+    }
+    return String.format("%.1f %s", value, units[unit]);
+  }
+
+  private static String formatNanos(long nanos) {
+    if (nanos < 0) {
+      return "?";
+    }
+    if (nanos < 1_000_000) {
+      return String.format("%.1f us", nanos / 1e3);
+    }
+    if (nanos < 1_000_000_000) {
+      return String.format("%.1f ms", nanos / 1e6);
+    }
+    double seconds = nanos / 1e9;
+    if (seconds < 60) {
+      return String.format("%.1f s", seconds);
+    }
+    if (seconds < 3600) {
+      return String.format("%.1f min", seconds / 60);
+    }
+    return String.format("%.1f h", seconds / 3600);
+  }
+
+  /**
+   * The estimated cost of a line.
+   */
+  static final class Estimate {
+
+    private final ImageCommandType type;
+    private final long pixels;
+    private final long bytes;
+    private final long work;
+    private final long nanos;
+
+    private Estimate(ImageCommandType type, long pixels, long bytes, long nanos) {
+      this(type, pixels, bytes, pixels, nanos);
+    }
+
+    private Estimate(ImageCommandType type, long pixels, long bytes, long work, long nanos) {
+      this.type = type;
+      this.pixels = pixels;
+      this.bytes = bytes;
+      this.work = work;
+      this.nanos = nanos;
+    }
+
+    ImageCommandType getType() {
+      return type;
+    }
+
+    /**
+     * Gets the number of pixels the line processes.
+     *
+     * @return the number of pixels, or -1 if it is unknown.
+     */
+    long getPixels() {
+      return pixels;
+    }
+
+    /**
+     * Gets the units the cost of the line is counted in: its pixels, times the taps of the kernel
+     * for the commands that convolve.
+     *
+     * @return the number of units, or -1 if it is unknown.
+     */
+    long getWork() {
+      return work;
+    }
+  }
+}
@@ -0,0 +1,453 @@
+package controller;
+
+import controller.commands.Components;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import model.ColorComponent;
+
+/**
+ * The `ScriptOptimizer` class rewrites the lines of a script into lines with the same effect that
+ * process fewer pixels. Three rewrites are made, in this order:
+ *
+ * <ul>
+ *   <li>A line computing what an earlier line already computed, the same command with the same
+ *   parameters on the same images, becomes a copy of the earlier result. So does the second of two
+ *   flips or inversions undoing each other, which becomes a copy of the image the first one read.
+ *   A copy is written as brightening by 0, which stores the image without computing anything.</li>
+ *   <li>A chop of the result of a per-pixel operation is done first, so that the operation only
+ *   processes the columns that are kept.</li>
+ *   <li>A line whose results are never read is removed.</li>
+ * </ul>
+ *
+ * <p>The rewrites drop images the script names, and copies share the image they copy, so they
+ * are only made for scripts after which nothing runs. Lines that cannot be parsed, and lines
+ * using the split option, are kept as they are, and are assumed to read and write every name they
+ * mention. A line that is removed reports no error, even if running it would fail.
+ */
+final class ScriptOptimizer {
+
+  private static final Set<ImageCommandType> INVOLUTIONS = EnumSet.of(
+      ImageCommandType.HORIZONTAL_FLIP, ImageCommandType.VERTICAL_FLIP, ImageCommandType.INVERT);
+
+  // Commands computing each pixel from the same pixel alone, so they commute with a chop
+  private static final Set<ImageCommandType> PER_PIXEL = EnumSet.of(
+      ImageCommandType.BRIGHTEN, ImageCommandType.GAMMA, ImageCommandType.CONTRAST,
+      ImageCommandType.INVERT, ImageCommandType.LEVEL_ADJUST, ImageCommandType.SEPIA,
+      ImageCommandType.COLOR_MATRIX, ImageCommandType.VALUE_COMPONENT,
+      ImageCommandType.INTENSITY_COMPONENT, ImageCommandType.LUMA_COMPONENT,
+      ImageCommandType.RED_COMPONENT, ImageCommandType.GREEN_COMPONENT,
+      ImageCommandType.BLUE_COMPONENT);
+
+  private final List<String> original;
+  private final List<Line> lines;
+  // The lines removed from the script, with the reasons, by their numbers in the original
+  private final Map<Integer, String> removed;
+
+  /**
+   * Optimizes the lines of a script.
+   *
+   * @param script the lines of the script.
+   */
+  ScriptOptimizer(List<String> script) {
+    this.original = new ArrayList<>(script);
+    this.lines = new ArrayList<>();
+    this.removed = new TreeMap<>();
+    for (int i = 0; i < script.size(); i++) {
+      lines.add(Line.parse(script.get(i), i + 1));
+    }
+    eliminateDuplicates();
+    pushChops();
+    eliminateDeadLines();
+  }
+
+  /**
+   * Gets the optimized lines of the script.
+   *
+   * @return the lines.
+   */
+  List<String> getLines() {
+    List<String> texts = new ArrayList<>();
+    for (Line line : lines) {
+      texts.add(line.text);
+    }
+    return texts;
+  }
+
+  /**
+   * Describes the script before and after optimizing it, with the reason for every rewritten or
+   * removed line.
+   *
+   * @return the description, one line of text per line of the script.
+   */
+  String explain() {
+    StringBuilder plan = new StringBuilder("Before:\n");
+    for (int i = 0; i < original.size(); i++) {
+      plan.append(String.format("%4d  %s%n", i + 1, original.get(i)));
+    }
+    plan.append("After:\n");
+    for (int i = 0; i < lines.size(); i++) {
+      Line line = lines.get(i);
+      plan.append(String.format("%4d  %s", i + 1, line.text));
+      if (line.note != null) {
+        plan.append("    (").append(line.note).append(")");
+      }
+      plan.append(System.lineSeparator());
+    }
+    plan.append("Removed:\n");
+    for (Map.Entry<Integer, String> line : removed.entrySet()) {
+      plan.append(String.format("%4d  %s%n", line.getKey(), line.getValue()));
+    }
+    return plan.toString();
+  }
+
+  /**
+   * Numbers the images the script computes, so that two images get the same number only if they
+   * are certainly equal, and replaces every line computing an image that is still named by a copy
+   * of it.
+   */
+  private void eliminateDuplicates() {
+    Map<String, Integer> values = new LinkedHashMap<>();
+    Map<String, Integer> computed = new HashMap<>();
+    Map<String, String> reasons = new HashMap<>();
+    int next = 0;
+    for (int i = 0; i < lines.size(); i++) {
+      Line line = lines.get(i);
+      int[] inputs = new int[line.sources.length];
+      for (int k = 0; k < inputs.length; k++) {
+        Integer value = values.get(line.sources[k]);
+        if (value == null) {
+          // An image from before the script, or one the script never stores
+          value = next++;
+          values.put(line.sources[k], value);
+        }
+        inputs[k] = value;
+      }
+      if (line.kind == Kind.PURE && line.isCopy()) {
+        bind(values, line.dests[0], inputs[0]);
+        continue;
+      }
+      String key = line.type + " " + line.params + " " + Arrays.toString(inputs);
+      Integer known = line.kind == Kind.PURE && line.dests.length == 1 ? computed.get(key) : null;
+      String holder = known == null ? null : nameOf(values, known);
+      if (known != null && holder == null && i > 0 && line.undoes(lines.get(i - 1))) {
+        // The command was applied in place just before, so no name holds what it gives back
+        remove(lines.get(i - 1), "undone by line " + line.number);
+        remove(line, reasons.get(key));
+        bind(values, line.dests[0], known);
+        lines.remove(i);
+        lines.remove(i - 1);
+        i -= 2;
+        continue;
+      }
+      if (holder != null) {
+        String dest = line.dests[0];
+        bind(values, dest, known);
+        if (holder.equals(dest)) {
+          remove(line, dest + " already holds it, " + reasons.get(key));
+          lines.remove(i);
+          i--;
+        } else {
+          lines.set(i, Line.copy(holder, dest, line.number, reasons.get(key)));
+        }
+        continue;
+      }
+      int[] outputs = new int[line.dests.length];
+      for (int k = 0; k < outputs.length; k++) {
+        outputs[k] = next++;
+        bind(values, line.dests[k], outputs[k]);
+      }
+      if (line.kind == Kind.PURE && outputs.length == 1) {
+        computed.put(key, outputs[0]);
+        reasons.put(key, "same as line " + line.number);
+        if (INVOLUTIONS.contains(line.type)) {
+          // Applying the command again gives back its input
+          String inverse = line.type + " " + line.params + " " + Arrays.toString(outputs);
+          computed.put(inverse, inputs[0]);
+          reasons.put(inverse, "undoes line " + line.number);
+        }
+      }
+    }
+  }
+
+  private static void bind(Map<String, Integer> values, String name, int value) {
+    // Names are kept in the order they were bound, so the oldest holder of a value is found first
+    values.remove(name);
+    values.put(name, value);
+  }
+
+  private static String nameOf(Map<String, Integer> values, int value) {
+    for (Map.Entry<String, Integer> entry : values.entrySet()) {
+      if (entry.getValue() == value) {
+        return entry.getKey();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Moves every chop reading the result of the line before it, a per-pixel operation, ahead of
+   * that operation, as long as nothing else reads the result: the chop then reads the image the
+   * operation read, and the operation is applied to the chopped image in place.
+   */
+  private void pushChops() {
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int i = 1; i < lines.size(); i++) {
+        Line chop = lines.get(i);
+        Line operation = lines.get(i - 1);
+        if (chop.kind != Kind.PURE || chop.type != ImageCommandType.CHOP
+            || operation.kind != Kind.PURE || !PER_PIXEL.contains(operation.type)
+            || !operation.dests[0].equals(chop.sources[0])
+            || !chop.dests[0].equals(chop.sources[0]) && isRead(i + 1, chop.sources[0])) {
+          continue;
+        }
+        String src = operation.sources[0];
+        String dest = chop.dests[0];
+        lines.set(i - 1, chop.withImages(src, dest, "chops before line " + operation.number));
+        lines.set(i, operation.withImages(dest, dest, "on the chopped image"));
+        changed = true;
+      }
+    }
+  }
+
+  /**
+   * Removes the lines computing only images that no later line reads, and copies of images onto
+   * themselves, starting from the end.
+   */
+  private void eliminateDeadLines() {
+    Set<String> live = new HashSet<>();
+    for (int i = lines.size() - 1; i >= 0; i--) {
+      Line line = lines.get(i);
+      if (line.kind == Kind.PURE && line.isCopy() && line.sources[0].equals(line.dests[0])) {
+        remove(line, "copies an image onto itself");
+        lines.remove(i);
+        continue;
+      }
+      if (line.kind == Kind.PURE) {
+        boolean used = false;
+        for (String dest : line.dests) {
+          used |= live.contains(dest);
+        }
+        if (!used) {
+          remove(line, "its result is never used");
+          lines.remove(i);
+          continue;
+        }
+      }
+      for (String dest : line.dests) {
+        live.remove(dest);
+      }
+      live.addAll(Arrays.asList(line.sources));
+    }
+  }
+
+  private void remove(Line line, String reason) {
+    removed.put(line.number, line.text + "    (" + reason + ")");
+  }
+
+  private boolean isRead(int from, String name) {
+    for (int i = from; i < lines.size(); i++) {
+      Line line = lines.get(i);
+      if (Arrays.asList(line.sources).contains(name)) {
+        return true;
+      }
+      if (Arrays.asList(line.dests).contains(name)) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * How a line may be rewritten.
+   */
+  private enum Kind {
+    // Computes its destinations from its sources alone
+    PURE,
+    // Reads or writes a file, or computes an image for its own sake, so it is always kept
+    EFFECT,
+    // Could not be parsed, so its sources and destinations are every name it mentions
+    OPAQUE
+  }
+
+  /**
+   * A parsed line of a script.
+   */
+  private static final class Line {
+
+    private final String text;
+    private final ImageCommandType type;
+    private final Kind kind;
+    private final String params;
+    private final String[] sources;
+    private final String[] dests;
+    // The number of the line in the original script, counting from 1
+    private int number;
+    private String note;
+
+    private Line(String text, ImageCommandType type, Kind kind, String params, String[] sources,
+        String[] dests) {
+      this.text = text;
+      this.type = type;
+      this.kind = kind;
+      this.params = params;
+      this.sources = sources;
+      this.dests = dests;
+    }
+
+    private Line annotated(int number, String note) {
+      this.number = number;
+      this.note = note;
+      return this;
+    }
+
+    private static Line copy(String src, String dest, int number, String note) {
+      return new Line("brighten 0 " + src + " " + dest, ImageCommandType.BRIGHTEN, Kind.PURE,
+          "0", new String[]{src}, new String[]{dest}).annotated(number, note);
+    }
+
+    private boolean isCopy() {
+      return type == ImageCommandType.BRIGHTEN && Float.parseFloat(params) == 0;
+    }
+
+    /**
+     * Checks whether this line and the line before it apply the same involution to an image in
+     * place, which leaves the image as it was.
+     */
+    private boolean undoes(Line previous) {
+      return kind == Kind.PURE && previous.kind == Kind.PURE && INVOLUTIONS.contains(type)
+          && previous.type == type && previous.params.equals(params)
+          && sources[0].equals(dests[0]) && previous.sources[0].equals(previous.dests[0])
+          && previous.dests[0].equals(sources[0]);
+    }
+
+    /**
+     * Gets the same line reading and writing other images. The line must have a single source,
+     * followed by its single destination.
+     */
+    private Line withImages(String src, String dest, String note) {
+      String[] tokens = text.split(" ");
+      int at = type == ImageCommandType.CHOP ? 1 : tokens.length - 2;
+      tokens[at] = src;
+      tokens[at + 1] = dest;
+      return new Line(String.join(" ", tokens), type, kind, params, new String[]{src},
+          new String[]{dest}).annotated(number, note);
+    }
+
+    private static Line parse(String text, int number) {
+      return parse(text).annotated(number, null);
+    }
+
+    private static Line parse(String text) {
+      String[] tokens = text.split(" ");
+      ImageCommandType type = ImageCommandType.fromString(tokens[0]);
+      if (!Arrays.asList(tokens).contains("split")) {
+        try {
+          Line line = parse(text, type, tokens);
+          if (line != null) {
+            return line;
+          }
+        } catch (NumberFormatException e) {
+          // Running the line reports the error
+        }
+      }
+      String[] names = Arrays.copyOfRange(tokens, Math.min(1, tokens.length), tokens.length);
+      return new Line(text, type, Kind.OPAQUE, "", names, names);
+    }
+
+    private static Line parse(String text, ImageCommandType type, String[] tokens) {
+      int count = tokens.length;
+      switch (type) {
+        case LOAD:
+          return count < 3 ? null : new Line(text, type, Kind.EFFECT, "", new String[0],
+              new String[]{tokens[count - 1]});
+        case SAVE:
+          return count < 3 ? null : new Line(text, type, Kind.EFFECT, "",
+              new String[]{tokens[count - 1]}, new String[0]);
+        case EVAL:
+          return count != 2 ? null : new Line(text, type, Kind.EFFECT, "",
+              new String[]{tokens[1]}, new String[0]);
+        case BRIGHTEN:
+        case GAMMA:
+        case CONTRAST:
+        case BLUR_RADIUS:
+        case COMPRESS:
+        case COLOR_MATRIX:
+          if (count != 4) {
+            return null;
+          }
+          if (type != ImageCommandType.COLOR_MATRIX) {
+            Double.parseDouble(tokens[1]);
+          }
+          return pure(text, type, tokens[1], tokens[2], tokens[3]);
+        case CONVOLVE:
+          return count != 4 && count != 5 ? null
+              : pure(text, type, tokens[1] + (count == 5 ? " " + tokens[4] : ""), tokens[2],
+                  tokens[3]);
+        case LEVEL_ADJUST:
+          if (count != 6) {
+            return null;
+          }
+          return pure(text, type, Integer.parseInt(tokens[1]) + " " + Integer.parseInt(tokens[2])
+              + " " + Integer.parseInt(tokens[3]), tokens[4], tokens[5]);
+        case CHOP:
+          return count != 5 ? null
+              : pure(text, type, String.valueOf(Float.parseFloat(tokens[4])), tokens[1],
+                  tokens[2]);
+        case UNDERLAY:
+          return count != 3 ? null : new Line(text, type, Kind.PURE, "",
+              new String[]{tokens[2], tokens[1]}, new String[]{tokens[1]});
+        case RGB_SPLIT:
+          return count != 5 ? null : new Line(text, type, Kind.PURE, "",
+              new String[]{tokens[1]}, Arrays.copyOfRange(tokens, 2, 5));
+        case RGB_COMBINE:
+          return count != 5 ? null : new Line(text, type, Kind.PURE, "",
+              Arrays.copyOfRange(tokens, 2, 5), new String[]{tokens[1]});
+        case COMPONENTS: {
+          if (count < 3) {
+            return null;
+          }
+          ColorComponent[] components;
+          try {
+            components = Components.parseComponents(Arrays.copyOfRange(tokens, 3, count));
+          } catch (IllegalArgumentException e) {
+            return null;
+          }
+          return new Line(text, type, Kind.PURE, Arrays.toString(components),
+              new String[]{tokens[1]}, Components.destinations(tokens[2], components));
+        }
+        case VERTICAL_FLIP:
+        case HORIZONTAL_FLIP:
+        case VALUE_COMPONENT:
+        case INTENSITY_COMPONENT:
+        case LUMA_COMPONENT:
+        case RED_COMPONENT:
+        case GREEN_COMPONENT:
+        case BLUE_COMPONENT:
+        case SEPIA:
+        case BLUR:
+        case SHARPEN:
+        case HISTOGRAM:
+        case COLOR_CORRECT:
+        case INVERT:
+          return count != 3 ? null : pure(text, type, "", tokens[1], tokens[2]);
+        default:
+          return null;
+      }
+    }
+
+    private static Line pure(String text, ImageCommandType type, String params, String src,
+        String dest) {
+      return new Line(text, type, Kind.PURE, params, new String[]{src}, new String[]{dest});
+    }
+  }
+}
@@ -1,11 +1,12 @@
 package controller.commands;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.List;
 import model.Extension;
 
 /**
@@ -69,27 +70,45 @@ public abstract class AbstractCommand implements Command {
     return (directory != null && directory.exists() && directory.isDirectory());
   }
 
-  protected ArrayList<ArrayList<ArrayList<Integer>>> convertToArray(BufferedImage image) {
-    int width = image.getWidth();
-    int height = image.getHeight();
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArrayList = new ArrayList<>();
-    boolean flag = image.getColorModel().hasAlpha();
-
-    for (int x = 0; x < width; x++) {
-      ArrayList<ArrayList<Integer>> rowList = new ArrayList<>();
-      for (int y = 0; y < height; y++) {
-        ArrayList<Integer> pixel = new ArrayList<>();
-        int rgb = image.getRGB(x, y);
-        pixel.add((rgb >> 16) & 0xFF);  // Red component
-        pixel.add((rgb >> 8) & 0xFF);   // Green component
-        pixel.add(rgb & 0xFF);
-        pixel.add(flag ? (rgb >> 24) & 0xFF : 255); // Alpha component
-        rowList.add(pixel);
+  /**
+   * Reads the rows of a matrix, either written inline with rows separated by semicolons, or from
+   * a file holding one row per line, where lines starting with '#' are ignored.
+   *
+   * @param matrix the inline matrix or the path of the file.
+   * @return the rows, whose values are still to be parsed.
+   * @throws IOException if the file cannot be read.
+   */
+  protected static List<String> readRows(String matrix) throws IOException {
+    List<String> rows = new ArrayList<>();
+    File file = new File(matrix);
+    if (file.isFile()) {
+      for (String line : Files.readAllLines(file.toPath())) {
+        line = line.trim();
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          rows.add(line);
+        }
+      }
+    } else {
+      for (String row : matrix.split(";")) {
+        rows.add(row.trim());
       }
-      rgbaArrayList.add(rowList);
     }
+    return rows;
+  }
 
-    return rgbaArrayList;
+  /**
+   * Parses a value of a matrix, written as a decimal or a fraction such as {@code 1/16}.
+   *
+   * @param weight the value as written.
+   * @return the value.
+   */
+  protected static double parseWeight(String weight) {
+    int slash = weight.indexOf('/');
+    if (slash < 0) {
+      return Double.parseDouble(weight);
+    }
+    return Double.parseDouble(weight.substring(0, slash))
+        / Double.parseDouble(weight.substring(slash + 1));
   }
 
 
@@ -0,0 +1,24 @@
+package controller.commands;
+
+import java.io.IOException;
+import model.IModel;
+
+/**
+ * The BlurRadius class represents a command that blurs an image with an approximate Gaussian of
+ * a given standard deviation, in pixels. It takes about as long as a single blur for any radius.
+ */
+public class BlurRadius extends AbstractCommand {
+
+  @Override
+  public void runCommand(String params, IModel model)
+      throws IOException, InstantiationException, IllegalAccessException {
+    String[] temp = params.split(" ");
+    if (temp.length != 3) {
+      throw new IllegalArgumentException("Illegal Number of Parameters " + params);
+    }
+    double sigma = Double.parseDouble(temp[0]);
+    String src = temp[1];
+    String dest = temp[2];
+    model.blurRadius(sigma, src, dest);
+  }
+}
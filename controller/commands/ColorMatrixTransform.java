@@ -0,0 +1,54 @@
+package controller.commands;
+
+import java.io.IOException;
+import java.util.List;
+import model.ColorMatrix;
+import model.IModel;
+
+/**
+ * The ColorMatrixTransform class represents a command that transforms the red, green and blue
+ * channels of every pixel with a color matrix. The matrix is either the name of a preset (sepia,
+ * luma, intensity, grayscale or channel-swap) or three rows written inline or read from a file as
+ * for the convolve command, such as {@code 0.5,0,0,10;0,1,0;0,0,1}. Each row holds the weights of
+ * the red, green and blue input channels and optionally an offset.
+ */
+public class ColorMatrixTransform extends AbstractCommand {
+
+  @Override
+  public void runCommand(String params, IModel model)
+      throws IOException, InstantiationException, IllegalAccessException {
+    String[] temp = params.split(" ");
+    if (temp.length != 3) {
+      throw new IllegalArgumentException("Illegal Number of Parameters " + params);
+    }
+    ColorMatrix matrix = readMatrix(temp[0]);
+    String src = temp[1];
+    String dest = temp[2];
+    model.colorMatrix(matrix, src, dest);
+  }
+
+  /**
+   * Reads a color matrix, given as the name of a preset, inline or as the path of a file.
+   *
+   * @param matrix the matrix as written in the command.
+   * @return the color matrix.
+   * @throws IOException if the file holding the matrix cannot be read.
+   */
+  public ColorMatrix readMatrix(String matrix) throws IOException {
+    ColorMatrix preset = ColorMatrix.preset(matrix);
+    return preset != null ? preset : new ColorMatrix(readWeights(matrix));
+  }
+
+  private double[][] readWeights(String matrix) throws IOException {
+    List<String> rows = readRows(matrix);
+    double[][] weights = new double[rows.size()][];
+    for (int c = 0; c < rows.size(); c++) {
+      String[] values = rows.get(c).split("[,\\s]+");
+      weights[c] = new double[values.length];
+      for (int k = 0; k < values.length; k++) {
+        weights[c][k] = parseWeight(values[k]);
+      }
+    }
+    return weights;
+  }
+}
@@ -0,0 +1,61 @@
+package controller.commands;
+
+import java.io.IOException;
+import java.util.Arrays;
+import model.ColorComponent;
+import model.IModel;
+
+/**
+ * The Components class represents a command that extracts several components of an image in a
+ * single pass over its pixels. It takes the source image, a prefix and the names of the
+ * components to extract, all six when none is named, and stores each component under the prefix
+ * followed by a hyphen and the name of the component.
+ */
+public class Components extends AbstractCommand {
+
+  @Override
+  public void runCommand(String params, IModel model)
+      throws IOException, InstantiationException, IllegalAccessException {
+    String[] tokens = params.split(" ");
+    if (tokens.length < 2) {
+      throw new IllegalArgumentException("Illegal Number of Parameters " + params);
+    }
+    ColorComponent[] components = parseComponents(Arrays.copyOfRange(tokens, 2, tokens.length));
+    model.components(tokens[0], components, destinations(tokens[1], components));
+  }
+
+  /**
+   * Parses the names of the components to extract.
+   *
+   * @param names the names of the components, or none for all of them.
+   * @return the components, in the order they were named.
+   */
+  public static ColorComponent[] parseComponents(String[] names) {
+    if (names.length == 0) {
+      return ColorComponent.values();
+    }
+    ColorComponent[] components = new ColorComponent[names.length];
+    for (int i = 0; i < names.length; i++) {
+      components[i] = ColorComponent.fromName(names[i]);
+      if (components[i] == null) {
+        throw new IllegalArgumentException("Unknown component: " + names[i]);
+      }
+    }
+    return components;
+  }
+
+  /**
+   * Names the images the components are stored under.
+   *
+   * @param prefix     the prefix of the names.
+   * @param components the components.
+   * @return the names, one per component in the same order.
+   */
+  public static String[] destinations(String prefix, ColorComponent[] components) {
+    String[] names = new String[components.length];
+    for (int i = 0; i < components.length; i++) {
+      names[i] = prefix + "-" + components[i].getName();
+    }
+    return names;
+  }
+}
@@ -0,0 +1,26 @@
+package controller.commands;
+
+import java.io.IOException;
+import model.IModel;
+import model.PointOperation;
+
+/**
+ * The Contrast class represents a command that changes the contrast of an image by scaling the
+ * distance of each channel from the middle of the range. A factor above 1 raises the contrast,
+ * and a factor below 1 lowers it.
+ */
+public class Contrast extends AbstractCommand {
+
+  @Override
+  public void runCommand(String params, IModel model)
+      throws IOException, InstantiationException, IllegalAccessException {
+    String[] temp = params.split(" ");
+    if (temp.length != 3) {
+      throw new IllegalArgumentException("Illegal Number of Parameters " + params);
+    }
+    double factor = Double.parseDouble(temp[0]);
+    String src = temp[1];
+    String dest = temp[2];
+    model.pointOperation(PointOperation.contrast(factor), src, dest);
+  }
+}
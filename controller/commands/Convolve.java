@@ -0,0 +1,54 @@
+package controller.commands;
+
+import java.io.IOException;
+import java.util.List;
+import model.BorderMode;
+import model.IModel;
+
+/**
+ * The Convolve class represents a command that convolves an image with a user-defined kernel. The
+ * kernel is either written inline, with rows separated by semicolons and weights by commas, such as
+ * {@code 0,-1,0;-1,5,-1;0,-1,0}, or read from a file holding one row per line. Weights may be
+ * decimals or fractions such as {@code 1/16}, and lines of a file starting with '#' are ignored.
+ * An optional last parameter chooses how pixels outside the image are read: zero, which is the
+ * default, clamp, mirror or wrap.
+ */
+public class Convolve extends AbstractCommand {
+
+  @Override
+  public void runCommand(String params, IModel model)
+      throws IOException, InstantiationException, IllegalAccessException {
+    String[] temp = params.split(" ");
+    if (temp.length != 3 && temp.length != 4) {
+      throw new IllegalArgumentException("Illegal Number of Parameters " + params);
+    }
+    double[][] kernel = readKernel(temp[0]);
+    String src = temp[1];
+    String dest = temp[2];
+    BorderMode border = temp.length == 4 ? BorderMode.fromString(temp[3]) : BorderMode.ZERO;
+    model.convolve(kernel, border, src, dest);
+  }
+
+  /**
+   * Reads a kernel written inline or in a file.
+   *
+   * @param kernel the inline kernel or the path of the file.
+   * @return the weights, indexed by column and then row.
+   * @throws IOException if the file cannot be read.
+   */
+  public static double[][] readKernel(String kernel) throws IOException {
+    List<String> rows = readRows(kernel);
+    // The rows are written as they appear on screen, while the model indexes columns first
+    double[][] weights = new double[rows.size()][rows.size()];
+    for (int y = 0; y < rows.size(); y++) {
+      String[] values = rows.get(y).split("[,\\s]+");
+      if (values.length != rows.size()) {
+        throw new IllegalArgumentException("The kernel must be square: " + kernel);
+      }
+      for (int x = 0; x < values.length; x++) {
+        weights[x][y] = parseWeight(values[x]);
+      }
+    }
+    return weights;
+  }
+}
@@ -0,0 +1,24 @@
+package controller.commands;
+
+import java.io.IOException;
+import model.IModel;
+
+/**
+ * The Eval class represents a command that computes an image right away. A model that defers its
+ * operations computes an image only when it is needed, so this lets a script choose when the work
+ * is done; other models have computed it already.
+ */
+public class Eval extends AbstractCommand {
+
+  @Override
+  public void runCommand(String params, IModel model)
+      throws IOException, InstantiationException, IllegalAccessException {
+    String[] temp = params.split(" ");
+    if (temp.length != 1 || temp[0].isEmpty()) {
+      throw new IllegalArgumentException("Illegal Number of Parameters " + params);
+    }
+    if (model.getImage(temp[0]) == null) {
+      throw new IllegalArgumentException("The specified image is not found: " + temp[0]);
+    }
+  }
+}
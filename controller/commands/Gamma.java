@@ -0,0 +1,25 @@
+package controller.commands;
+
+import java.io.IOException;
+import model.IModel;
+import model.PointOperation;
+
+/**
+ * The Gamma class represents a command that applies a gamma curve to an image. A gamma above 1
+ * brightens the midtones, and a gamma below 1 darkens them.
+ */
+public class Gamma extends AbstractCommand {
+
+  @Override
+  public void runCommand(String params, IModel model)
+      throws IOException, InstantiationException, IllegalAccessException {
+    String[] temp = params.split(" ");
+    if (temp.length != 3) {
+      throw new IllegalArgumentException("Illegal Number of Parameters " + params);
+    }
+    double gamma = Double.parseDouble(temp[0]);
+    String src = temp[1];
+    String dest = temp[2];
+    model.pointOperation(PointOperation.gamma(gamma), src, dest);
+  }
+}
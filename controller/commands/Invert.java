@@ -0,0 +1,19 @@
+package controller.commands;
+
+import java.io.IOException;
+import model.IModel;
+import model.PointOperation;
+
+/**
+ * The Invert class represents a command that inverts the colors of an image, as in a
+ * photographic negative.
+ */
+public class Invert extends AbstractCommand {
+
+  @Override
+  public void runCommand(String params, IModel model)
+      throws IOException, InstantiationException, IllegalAccessException {
+    String[] images = componentHelper(params);
+    model.pointOperation(PointOperation.INVERT, images[0], images[1]);
+  }
+}
@@ -5,12 +5,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Scanner;
 import javax.imageio.ImageIO;
 import model.Extension;
 import model.IModel;
+import model.Image;
 
 /**
  * The Load class represents a command that performs a load operation on an image.
@@ -39,20 +39,20 @@ public class Load extends AbstractCommand {
 
     Extension extension = getExtension(filePath);
     BufferedImage inputImage;
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = null;
+    Image image = null;
 
     if (extension != Extension.UNKNOWN) {
       if (extension == Extension.PPM) {
-        rgbaArray = readPPM(filePath);
+        image = readPPM(filePath);
       } else {
         inputImage = ImageIO.read(new File(filePath));
-        rgbaArray = convertToArray(inputImage);
+        image = Image.fromBufferedImage(inputImage);
       }
     }
-    model.load(name, rgbaArray);
+    model.load(name, image);
   }
 
-  private ArrayList<ArrayList<ArrayList<Integer>>> readPPM(String filePath) throws IOException {
+  private Image readPPM(String filePath) throws IOException {
 
     Scanner sc = new Scanner(new FileInputStream(filePath));
 
@@ -74,40 +74,22 @@ public class Load extends AbstractCommand {
     int width = sc.nextInt();
     int height = sc.nextInt();
     sc.nextInt();
-    int[][][] image = new int[width][height][4];
+    Image image = new Image(width, height);
 
     for (int y = 0; y < height; y++) {
       for (int x = 0; x < width; x++) {
-        image[x][y][0] = sc.nextInt();
-        image[x][y][1] = sc.nextInt();
-        image[x][y][2] = sc.nextInt();
-        image[x][y][3] = 255;
+        int red = sc.nextInt();
+        int green = sc.nextInt();
+        int blue = sc.nextInt();
+        image.setArgb(x, y, Image.argb(255, red, green, blue));
       }
     }
 
-    return convertArrayToArrayList(image);
+    return image;
 
 
   }
 
-  private ArrayList<ArrayList<ArrayList<Integer>>> convertArrayToArrayList(int[][][] array3D) {
-    ArrayList<ArrayList<ArrayList<Integer>>> arrayList3D = new ArrayList<>();
-
-    for (int[][] array2D : array3D) {
-      ArrayList<ArrayList<Integer>> arrayList2D = new ArrayList<>();
-      for (int[] array1D : array2D) {
-        ArrayList<Integer> arrayList1D = new ArrayList<>();
-        for (int value : array1D) {
-          arrayList1D.add(value);
-        }
-        arrayList2D.add(arrayList1D);
-      }
-      arrayList3D.add(arrayList2D);
-    }
-
-    return arrayList3D;
-  }
-
 }
 
 
@@ -6,11 +6,11 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import javax.imageio.ImageIO;
 import model.Extension;
 import model.IModel;
+import model.Image;
 
 /**
  * The Save class represents a command that performs a save operation on an image.
@@ -37,17 +37,17 @@ public class Save extends AbstractCommand {
       throw new FileNotFoundException("The specified file in load not valid: " + filePath);
     }
     Extension extension = getExtension(filePath);
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = model.getRgbaArray(name);
+    Image image = model.getImage(name);
 
     BufferedImage outputImage;
     if (extension != Extension.UNKNOWN) {
       if (extension == Extension.PPM) {
-        writePPM(filePath, rgbaArray);
+        writePPM(filePath, image);
       } else if (extension == Extension.PNG) {
-        outputImage = convertToBufferImagePNG(rgbaArray);
+        outputImage = image.toBufferedImage(true);
         ImageIO.write(outputImage, extension.getExtension(), new File(filePath));
       } else {
-        outputImage = convertToBufferedImageOther(rgbaArray);
+        outputImage = image.toBufferedImage(false);
         ImageIO.write(outputImage, extension.getExtension(), new File(filePath));
 
       }
@@ -56,52 +56,12 @@ public class Save extends AbstractCommand {
 
   }
 
-  private BufferedImage convertToBufferedImageOther(
-      ArrayList<ArrayList<ArrayList<Integer>>> rgbaArrayList) {
-    int width = rgbaArrayList.size();
-    int height = rgbaArrayList.get(0).size();
-    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-    for (int x = 0; x < width; x++) {
-      for (int y = 0; y < height; y++) {
-        ArrayList<Integer> pixel = rgbaArrayList.get(x).get(y);
-        int red = pixel.get(0);
-        int green = pixel.get(1);
-        int blue = pixel.get(2);
-        int rgb = (red << 16) | (green << 8) | blue;
-        image.setRGB(x, y, rgb);
-      }
-    }
-    return image;
-  }
-
-  private BufferedImage convertToBufferImagePNG(
-      ArrayList<ArrayList<ArrayList<Integer>>> rgbaArrayList) {
-    int width = rgbaArrayList.size();
-    int height = rgbaArrayList.get(0).size();
-    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-
-    for (int x = 0; x < width; x++) {
-      for (int y = 0; y < height; y++) {
-        ArrayList<Integer> pixel = rgbaArrayList.get(x).get(y);
-        int alpha = pixel.get(3);
-        int red = pixel.get(0);
-        int green = pixel.get(1);
-        int blue = pixel.get(2);
-        int rgba = (alpha << 24) | (red << 16) | (green << 8) | blue;
-        image.setRGB(x, y, rgba);
-      }
-    }
-    return image;
-  }
-
-  private void writePPM(String ppmFilePath, ArrayList<ArrayList<ArrayList<Integer>>> rgbArray)
-      throws IOException {
+  private void writePPM(String ppmFilePath, Image image) throws IOException {
     // The try-with-resources statement automatically closes the file when the block is exited,
     // even if an exception is thrown
     try (BufferedWriter writer = new BufferedWriter(new FileWriter(ppmFilePath))) {
-      int height = rgbArray.get(0).size();
-      int width = rgbArray.size();
+      int height = image.getHeight();
+      int width = image.getWidth();
       int maxValue = 255; // Maximum color value
 
       // Write the PPM header
@@ -112,10 +72,10 @@ public class Save extends AbstractCommand {
       // Write RGB values from the array
       for (int y = 0; y < height; y++) {
         for (int x = 0; x < width; x++) {
-          ArrayList<Integer> pixel = rgbArray.get(x).get(y);
-          int red = pixel.get(0);
-          int green = pixel.get(1);
-          int blue = pixel.get(2);
+          int argb = image.getArgb(x, y);
+          int red = Image.red(argb);
+          int green = Image.green(argb);
+          int blue = Image.blue(argb);
           writer.write(red + "\n" + green + "\n" + blue + "\n");
         }
       }
@@ -0,0 +1,70 @@
+package model;
+
+/**
+ * Enumeration representing the ways a filter reads pixels that lie outside the image.
+ */
+public enum BorderMode {
+  /**
+   * Pixels outside the image count as zero, which darkens the edges of a blur.
+   */
+  ZERO,
+
+  /**
+   * Pixels outside the image repeat the nearest edge pixel.
+   */
+  CLAMP,
+
+  /**
+   * The image is reflected about its edge pixels, which are not repeated.
+   */
+  MIRROR,
+
+  /**
+   * The image repeats itself, as if the opposite edges were joined.
+   */
+  WRAP;
+
+  /**
+   * Retrieves a border mode from its name, ignoring case.
+   *
+   * @param name the name of the mode.
+   * @return the matching border mode.
+   * @throws IllegalArgumentException if no mode has the given name.
+   */
+  public static BorderMode fromString(String name) {
+    for (BorderMode mode : values()) {
+      if (mode.name().equalsIgnoreCase(name)) {
+        return mode;
+      }
+    }
+    throw new IllegalArgumentException("Unknown border mode: " + name);
+  }
+
+  /**
+   * Maps a coordinate along one side of the image to the coordinate of the pixel it reads.
+   *
+   * @param coordinate the coordinate, which may lie outside the image.
+   * @param length     the length of the side.
+   * @return the coordinate inside the image, or -1 if the pixel counts as zero.
+   */
+  int resolve(int coordinate, int length) {
+    if (coordinate >= 0 && coordinate < length) {
+      return coordinate;
+    }
+    switch (this) {
+      case CLAMP:
+        return coordinate < 0 ? 0 : length - 1;
+      case MIRROR:
+        if (length == 1) {
+          return 0;
+        }
+        int period = 2 * (length - 1);
+        int folded = Math.floorMod(coordinate, period);
+        return folded < length ? folded : period - folded;
+      case WRAP:
+        return Math.floorMod(coordinate, length);
+      default:
+        return -1;
+    }
+  }
+}
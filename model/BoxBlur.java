@@ -0,0 +1,222 @@
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The `BoxBlur` class approximates a Gaussian blur of any standard deviation with three
+ * successive box blurs, whose widths are chosen so that their combined variance matches the
+ * Gaussian. Each box is computed from a running sum along the row, so the cost per pixel does
+ * not depend on the radius.
+ *
+ * <p>The boxes average only the pixels inside the image, so the edges do not darken however
+ * large the radius. Each plane is blurred along its rows and written transposed, then blurred
+ * along the rows of the transposed plane and written back, so both directions walk memory in
+ * order.
+ */
+final class BoxBlur {
+
+  /**
+   * The smallest standard deviation three boxes approximate well. Below it the boxes are only a
+   * few pixels wide, and a sampled Gaussian kernel is both accurate and cheap.
+   */
+  static final double MIN_SIGMA = 2;
+
+  private static final int PASSES = 3;
+  // Boxes this wide already average every line of any image that fits in memory
+  private static final double MAX_SIGMA = 1 << 20;
+  // Below this many pixels a band of lines is not worth splitting any further
+  private static final long SEQUENTIAL_THRESHOLD = 1L << 16;
+  private static final int RECIPROCAL_SHIFT = 40;
+  private static final int MAX_RECIPROCAL_COUNT = 1 << 16;
+  // Lines blurred together before their values are written to the columns of the target
+  private static final int BLOCK = 16;
+
+  private final ForkJoinPool pool;
+
+  /**
+   * Constructs a blur that processes large images in bands of lines on the given pool.
+   *
+   * @param pool the pool running the bands, or null to always blur on the calling thread.
+   */
+  BoxBlur(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Gets the radii of the boxes approximating a Gaussian, following Kovesi's choice of two box
+   * widths that differ by two.
+   *
+   * @param sigma the standard deviation of the Gaussian, in pixels.
+   * @return the radius of each box.
+   */
+  static int[] radii(double sigma) {
+    if (!(sigma > 0)) {
+      throw new IllegalArgumentException("The radius must be a positive number: " + sigma);
+    }
+    double deviation = Math.min(sigma, MAX_SIGMA);
+    double variance = 12 * deviation * deviation;
+    int lower = (int) Math.floor(Math.sqrt(variance / PASSES + 1));
+    if (lower % 2 == 0) {
+      lower--;
+    }
+    int upper = lower + 2;
+    long lowerCount = Math.round((variance - PASSES * (long) lower * lower - 4L * PASSES * lower
+        - 3 * PASSES) / (-4.0 * lower - 4));
+    int[] radii = new int[PASSES];
+    for (int i = 0; i < PASSES; i++) {
+      radii[i] = ((i < lowerCount ? lower : upper) - 1) / 2;
+    }
+    return radii;
+  }
+
+  /**
+   * Blurs the red, green and blue planes of an image, keeping its alpha plane.
+   *
+   * @param image the image to be blurred.
+   * @param sigma the standard deviation of the Gaussian, in pixels.
+   * @return a new image holding the blurred pixels.
+   */
+  Image blur(Image image, double sigma) {
+    int[] radii = radii(sigma);
+    int width = image.getWidth();
+    int height = image.getHeight();
+    byte[][] transposed = new byte[3][width * height];
+    byte[][] blurred = new byte[3][width * height];
+    // The rows of the image are read as they are blurred, so an off-heap image is never converted
+    run(new Lines(image, null, transposed, width, height, radii, 0, height));
+    run(new Lines(null, transposed, blurred, height, width, radii, 0, width));
+    return new Image(new PlanarImage(width, height, blurred[0], blurred[1], blurred[2],
+        image.channelPlane(3)));
+  }
+
+  private void run(Lines lines) {
+    if (pool == null || lines.cost() <= SEQUENTIAL_THRESHOLD) {
+      lines.blur();
+    } else {
+      pool.invoke(lines);
+    }
+  }
+
+  /**
+   * Replaces each value of a line with the rounded average of the values within the radius that
+   * lie inside the line.
+   *
+   * @param line   the values, overwritten with the averages.
+   * @param length the length of the line.
+   * @param radius the radius of the box.
+   * @param sums   a buffer of at least length + 1 running sums.
+   */
+  private static void box(int[] line, int length, int radius, int[] sums) {
+    sums[0] = 0;
+    for (int x = 0; x < length; x++) {
+      sums[x + 1] = sums[x] + line[x];
+    }
+    // Only the boxes near the ends of the line are cut short, and the others all divide by the
+    // same count
+    int head = Math.min(radius, length);
+    int tail = Math.max(head, length - radius);
+    int window = 2 * radius + 1;
+    if (window >= MAX_RECIPROCAL_COUNT) {
+      tail = head;
+    }
+    for (int x = 0; x < head; x++) {
+      line[x] = average(sums, 0, Math.min(length, x + radius + 1));
+    }
+    // Dividing by a multiply and a shift, which is exact for sums of bytes over fewer than
+    // MAX_RECIPROCAL_COUNT values
+    long inverse = (1L << RECIPROCAL_SHIFT) / window + 1;
+    int half = window >> 1;
+    for (int x = head; x < tail; x++) {
+      line[x] = (int) (((sums[x + radius + 1] - sums[x - radius] + half) * inverse)
+          >>> RECIPROCAL_SHIFT);
+    }
+    for (int x = tail; x < length; x++) {
+      line[x] = average(sums, Math.max(0, x - radius), Math.min(length, x + radius + 1));
+    }
+  }
+
+  private static int average(int[] sums, int from, int to) {
+    int count = to - from;
+    return (sums[to] - sums[from] + count / 2) / count;
+  }
+
+  /**
+   * A band of lines of the planes, blurred on its own or split in two halves run in parallel.
+   * Line y of a source plane becomes column y of the target plane.
+   */
+  private static class Lines extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    // The image whose rows are read, or null if the source planes are
+    private final Image image;
+    private final byte[][] source;
+    private final byte[][] target;
+    private final int length;
+    private final int count;
+    private final int[] radii;
+    private final int from;
+    private final int to;
+
+    private Lines(Image image, byte[][] source, byte[][] target, int length, int count,
+        int[] radii, int from, int to) {
+      this.image = image;
+      this.source = source;
+      this.target = target;
+      this.length = length;
+      this.count = count;
+      this.radii = radii;
+      this.from = from;
+      this.to = to;
+    }
+
+    private long cost() {
+      return 3L * length * (to - from);
+    }
+
+    @Override
+    protected void compute() {
+      if (cost() <= SEQUENTIAL_THRESHOLD || to - from < 2) {
+        blur();
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(new Lines(image, source, target, length, count, radii, from, middle),
+          new Lines(image, source, target, length, count, radii, middle, to));
+    }
+
+    private void blur() {
+      int[][] lines = new int[BLOCK][length];
+      int[] sums = new int[length + 1];
+      for (int c = 0; c < 3; c++) {
+        byte[] plane = image == null ? source[c] : null;
+        byte[] transposed = target[c];
+        // A block of lines at a time, so each column of the target is written in one run
+        for (int first = from; first < to; first += BLOCK) {
+          int block = Math.min(BLOCK, to - first);
+          for (int k = 0; k < block; k++) {
+            int[] line = lines[k];
+            if (plane == null) {
+              image.readChannel(c, 0, first + k, length, line, 0);
+            } else {
+              int row = (first + k) * length;
+              for (int x = 0; x < length; x++) {
+                line[x] = plane[row + x] & 0xFF;
+              }
+            }
+            for (int radius : radii) {
+              box(line, length, radius, sums);
+            }
+          }
+          for (int x = 0; x < length; x++) {
+            int column = x * count + first;
+            for (int k = 0; k < block; k++) {
+              transposed[column + k] = (byte) lines[k][x];
+            }
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package model;
+
+/**
+ * Enumeration representing the greyscale and single-channel components that can be extracted
+ * from an image.
+ */
+public enum ColorComponent {
+  VALUE("value"),
+  INTENSITY("intensity"),
+  LUMA("luma"),
+  RED("red"),
+  GREEN("green"),
+  BLUE("blue");
+
+  private final String name;
+
+  ColorComponent(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Retrieves the component with the given name, ignoring case.
+   *
+   * @param name the name of the component.
+   * @return the component, or null if no component has the given name.
+   */
+  public static ColorComponent fromName(String name) {
+    for (ColorComponent component : values()) {
+      if (component.getName().equalsIgnoreCase(name)) {
+        return component;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the name of this component, as used in the names of the images extracted by the
+   * components command.
+   *
+   * @return the name of the component.
+   */
+  public String getName() {
+    return name;
+  }
+}
@@ -0,0 +1,273 @@
+package model;
+
+/**
+ * The `ColorMatrix` class represents an affine transform of the red, green and blue channels of
+ * a pixel: each output channel is a weighted sum of the input channels plus an offset, divided by
+ * a common divisor, truncated and clamped to [0, 255]. Alpha is kept as it is.
+ *
+ * <p>The matrix is compiled into integer coefficients in fixed point, so a pixel costs nine integer
+ * multiply-adds. A fixed-point sum that lies too close to an integer for the rounding of the
+ * coefficients to tell which side it falls on is computed again in floating point, so the result
+ * is always the one the floating-point formula gives. Matrices of integers with an integer
+ * divisor, such as the average of the channels, are exact in fixed point and never fall back.
+ */
+public final class ColorMatrix {
+
+  /**
+   * The sepia tone used by the sepia command.
+   */
+  public static final ColorMatrix SEPIA = new ColorMatrix(new double[][]{
+      {0.393, 0.769, 0.189},
+      {0.349, 0.686, 0.168},
+      {0.272, 0.534, 0.131}
+  });
+
+  /**
+   * The luma of the ITU-R BT.709 primaries, used by the luma-component command.
+   */
+  public static final ColorMatrix LUMA = grey(0.2126, 0.7152, 0.0722, 1);
+
+  /**
+   * The average of the channels, used by the intensity-component command.
+   */
+  public static final ColorMatrix INTENSITY = grey(1, 1, 1, 3);
+
+  /**
+   * The luma of the ITU-R BT.601 primaries, the usual weights of a greyscale conversion.
+   */
+  public static final ColorMatrix GRAYSCALE = grey(0.299, 0.587, 0.114, 1);
+
+  /**
+   * Swaps the red and blue channels.
+   */
+  public static final ColorMatrix CHANNEL_SWAP = new ColorMatrix(new double[][]{
+      {0, 0, 1},
+      {0, 1, 0},
+      {1, 0, 0}
+  });
+
+  private static final int MAX_SHIFT = 22;
+  // Below this many fractional bits, most sums would be too close to an integer to be trusted
+  private static final int MIN_SHIFT = 14;
+
+  private final double[][] matrix;
+  private final double[] weights;
+  private final double divisor;
+  private final int shift;
+  private final int guard;
+  private final int[] coefficients;
+
+  /**
+   * Constructs a color matrix.
+   *
+   * @param matrix three rows, one per output channel, holding the weights of the red, green and
+   *               blue input channels and optionally an offset.
+   */
+  public ColorMatrix(double[][] matrix) {
+    this(matrix, 1);
+  }
+
+  /**
+   * Constructs a color matrix whose sums are divided by a common divisor.
+   *
+   * @param matrix  three rows, one per output channel, holding the weights of the red, green and
+   *                blue input channels and optionally an offset.
+   * @param divisor the divisor of every sum.
+   */
+  public ColorMatrix(double[][] matrix, double divisor) {
+    if (matrix == null || matrix.length != 3) {
+      throw new IllegalArgumentException("A color matrix must have three rows!");
+    }
+    if (divisor == 0 || !Double.isFinite(divisor)) {
+      throw new IllegalArgumentException("The divisor must be a nonzero number!");
+    }
+    this.matrix = new double[3][4];
+    double largest = 0;
+    for (int c = 0; c < 3; c++) {
+      if (matrix[c] == null || (matrix[c].length != 3 && matrix[c].length != 4)) {
+        throw new IllegalArgumentException("Each row of a color matrix must have 3 or 4 values!");
+      }
+      for (int k = 0; k < matrix[c].length; k++) {
+        if (!Double.isFinite(matrix[c][k])) {
+          throw new IllegalArgumentException("The values of a color matrix must be finite!");
+        }
+        this.matrix[c][k] = matrix[c][k];
+        largest = Math.max(largest, Math.abs(matrix[c][k] / divisor) * (k < 3 ? 255 : 1));
+      }
+    }
+    this.divisor = divisor;
+    this.weights = new double[12];
+    for (int k = 0; k < 12; k++) {
+      weights[k] = this.matrix[k / 4][k % 4];
+    }
+
+    // The widest fixed point whose sums of three weighted channels and an offset fit an int
+    int shift = MAX_SHIFT;
+    while (shift >= MIN_SHIFT && 4 * largest * (1 << shift) >= Integer.MAX_VALUE) {
+      shift--;
+    }
+    if (shift < MIN_SHIFT) {
+      // The weights are too large for fixed point, so every pixel uses floating point
+      this.shift = 0;
+      this.guard = 0;
+      this.coefficients = null;
+      return;
+    }
+    this.shift = shift;
+    this.coefficients = new int[12];
+    if (isIntegral(this.matrix, divisor, shift)) {
+      // Integer sums are divided by multiplying with the reciprocal of the divisor rounded up,
+      // which gives their exact integer part, so no sum needs floating point
+      long reciprocal = (1L << shift) / (long) divisor + 1;
+      for (int k = 0; k < 12; k++) {
+        coefficients[k] = (int) (this.matrix[k / 4][k % 4] * reciprocal);
+      }
+      this.guard = 0;
+      return;
+    }
+    // Each coefficient is rounded by at most half a unit, which three channel values of up to
+    // 255 and the offset turn into at most 383 units
+    this.guard = 385;
+    for (int c = 0; c < 3; c++) {
+      for (int k = 0; k < 4; k++) {
+        coefficients[c * 4 + k] = (int) Math.round(this.matrix[c][k] / divisor * (1 << shift));
+      }
+    }
+  }
+
+  /**
+   * Checks whether the weights and offsets are integers and the divisor a positive integer small
+   * enough for every sum times the divisor to stay below 2^shift.
+   */
+  private static boolean isIntegral(double[][] matrix, double divisor, int shift) {
+    if (divisor < 1 || divisor != Math.rint(divisor)) {
+      return false;
+    }
+    for (double[] row : matrix) {
+      double largest = Math.abs(row[3]);
+      for (int k = 0; k < 4; k++) {
+        if (row[k] != Math.rint(row[k])) {
+          return false;
+        }
+        largest += k < 3 ? 255 * Math.abs(row[k]) : 0;
+      }
+      if ((largest + 1) * divisor >= 1 << shift) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static ColorMatrix grey(double red, double green, double blue, double divisor) {
+    double[] row = {red, green, blue};
+    return new ColorMatrix(new double[][]{row, row, row}, divisor);
+  }
+
+  /**
+   * Retrieves a preset by name, ignoring case: sepia, luma, intensity, grayscale or channel-swap.
+   *
+   * @param name the name of the preset.
+   * @return the preset, or null if no preset has the given name.
+   */
+  public static ColorMatrix preset(String name) {
+    switch (name.toLowerCase()) {
+      case "sepia":
+        return SEPIA;
+      case "luma":
+        return LUMA;
+      case "intensity":
+        return INTENSITY;
+      case "grayscale":
+        return GRAYSCALE;
+      case "channel-swap":
+        return CHANNEL_SWAP;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Gets the fixed-point coefficients, four per output channel: the weights of red, green and
+   * blue, then the offset. The returned array must not be modified.
+   *
+   * @return the coefficients, or null if every pixel must use floating point.
+   */
+  int[] coefficients() {
+    return coefficients;
+  }
+
+  /**
+   * Gets the weights and offsets of the matrix, four per output channel: the weights of red,
+   * green and blue, then the offset. The returned array must not be modified.
+   *
+   * @return the weights and offsets.
+   */
+  double[] weights() {
+    return weights;
+  }
+
+  /**
+   * Gets the divisor of every sum.
+   *
+   * @return the divisor.
+   */
+  double divisor() {
+    return divisor;
+  }
+
+  /**
+   * Gets the number of fractional bits of the fixed-point coefficients.
+   *
+   * @return the number of fractional bits.
+   */
+  int shift() {
+    return shift;
+  }
+
+  /**
+   * Gets how far from an integer, in fixed-point units, a sum must lie for its integer part to be
+   * the exact one.
+   *
+   * @return the guard distance.
+   */
+  int guard() {
+    return guard;
+  }
+
+  /**
+   * Transforms a single pixel, in fixed point when the sums allow it.
+   *
+   * @param argb the pixel.
+   * @return the transformed pixel.
+   */
+  int apply(int argb) {
+    return Image.argb(Image.alpha(argb), channel(0, argb), channel(1, argb), channel(2, argb));
+  }
+
+  private int channel(int channel, int argb) {
+    if (coefficients == null) {
+      return exact(channel, argb);
+    }
+    int row = channel * 4;
+    int sum = coefficients[row] * Image.red(argb) + coefficients[row + 1] * Image.green(argb)
+        + coefficients[row + 2] * Image.blue(argb) + coefficients[row + 3];
+    if (((sum + guard) & ((1 << shift) - 1)) < 2 * guard) {
+      return exact(channel, argb);
+    }
+    return Math.min(255, Math.max(0, sum >> shift));
+  }
+
+  /**
+   * Computes an output channel of a pixel with the floating-point formula.
+   *
+   * @param channel the output channel, 0 for red, 1 for green and 2 for blue.
+   * @param argb    the input pixel.
+   * @return the value of the output channel.
+   */
+  int exact(int channel, int argb) {
+    double[] row = matrix[channel];
+    double result = (row[0] * Image.red(argb) + row[1] * Image.green(argb)
+        + row[2] * Image.blue(argb) + row[3]) / divisor;
+    return Math.min(255, Math.max(0, (int) result));
+  }
+}
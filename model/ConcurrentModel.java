@@ -0,0 +1,291 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * The `ConcurrentModel` class makes a model safe to use from several threads. Every image name
+ * is guarded by one of a fixed number of read-write locks, chosen by the hash of the name. An
+ * operation holds the read locks of its sources and the write locks of its destinations while it
+ * runs, so operations on unrelated images run in parallel, and a destination is only ever seen
+ * before or after the operation writing it.
+ *
+ * <p>The locks are always taken in the order of their stripes, so operations locking several
+ * images cannot deadlock.
+ */
+public class ConcurrentModel implements IModel {
+
+  private static final int STRIPES = 64;
+
+  private final IModel model;
+  private final ReadWriteLock[] locks;
+
+  /**
+   * Constructs a concurrent model over a new model.
+   */
+  public ConcurrentModel() {
+    this(new Model());
+  }
+
+  /**
+   * Constructs a concurrent model over the given model. The model must keep its images in a store
+   * that is safe to use from several threads, as {@link Model} does, and must not be used
+   * directly afterwards.
+   *
+   * @param model the model whose operations are guarded.
+   */
+  public ConcurrentModel(IModel model) {
+    if (model == null) {
+      throw new IllegalArgumentException("The model cannot be null.");
+    }
+    this.model = model;
+    this.locks = new ReadWriteLock[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      locks[i] = new ReentrantReadWriteLock();
+    }
+  }
+
+  @Override
+  public void brighten(float factor, String src, String dest) {
+    update(names(src), names(dest), () -> model.brighten(factor, src, dest));
+  }
+
+  @Override
+  public void verticalFlip(String src, String dest) {
+    update(names(src), names(dest), () -> model.verticalFlip(src, dest));
+  }
+
+  @Override
+  public void horizontalFlip(String src, String dest) {
+    update(names(src), names(dest), () -> model.horizontalFlip(src, dest));
+  }
+
+  @Override
+  public void sepia(String src, String dest) {
+    update(names(src), names(dest), () -> model.sepia(src, dest));
+  }
+
+  @Override
+  public void blur(String src, String dest) {
+    update(names(src), names(dest), () -> model.blur(src, dest));
+  }
+
+  @Override
+  public void blur(String src, String dest, Region region) {
+    update(names(src), names(dest), () -> model.blur(src, dest, region));
+  }
+
+  @Override
+  public void sharpen(String src, String dest) {
+    update(names(src), names(dest), () -> model.sharpen(src, dest));
+  }
+
+  @Override
+  public void sharpen(String src, String dest, Region region) {
+    update(names(src), names(dest), () -> model.sharpen(src, dest, region));
+  }
+
+  @Override
+  public void blurRadius(double sigma, String src, String dest) {
+    update(names(src), names(dest), () -> model.blurRadius(sigma, src, dest));
+  }
+
+  @Override
+  public void convolve(double[][] kernel, BorderMode border, String src, String dest) {
+    update(names(src), names(dest), () -> model.convolve(kernel, border, src, dest));
+  }
+
+  @Override
+  public void convolve(double[][] kernel, BorderMode border, String src, String dest,
+      Region region) {
+    update(names(src), names(dest), () -> model.convolve(kernel, border, src, dest, region));
+  }
+
+  @Override
+  public void colorMatrix(ColorMatrix matrix, String src, String dest) {
+    update(names(src), names(dest), () -> model.colorMatrix(matrix, src, dest));
+  }
+
+  @Override
+  public void pointOperation(PointOperation operation, String src, String dest) {
+    update(names(src), names(dest), () -> model.pointOperation(operation, src, dest));
+  }
+
+  @Override
+  public void applyChain(PointChain chain, String src, String dest) {
+    update(names(src), names(dest), () -> model.applyChain(chain, src, dest));
+  }
+
+  @Override
+  public void applyChain(PointChain chain, String src, String dest, Region region) {
+    update(names(src), names(dest), () -> model.applyChain(chain, src, dest, region));
+  }
+
+  @Override
+  public void valueComponent(String src, String dest) {
+    update(names(src), names(dest), () -> model.valueComponent(src, dest));
+  }
+
+  @Override
+  public void valueComponent(String src, String dest, Region region) {
+    update(names(src), names(dest), () -> model.valueComponent(src, dest, region));
+  }
+
+  @Override
+  public void intensityComponent(String src, String dest) {
+    update(names(src), names(dest), () -> model.intensityComponent(src, dest));
+  }
+
+  @Override
+  public void lumaComponent(String src, String dest) {
+    update(names(src), names(dest), () -> model.lumaComponent(src, dest));
+  }
+
+  @Override
+  public void redComponent(String src, String dest) {
+    update(names(src), names(dest), () -> model.redComponent(src, dest));
+  }
+
+  @Override
+  public void greenComponent(String src, String dest) {
+    update(names(src), names(dest), () -> model.greenComponent(src, dest));
+  }
+
+  @Override
+  public void blueComponent(String src, String dest) {
+    update(names(src), names(dest), () -> model.blueComponent(src, dest));
+  }
+
+  @Override
+  public void rgbSplit(String src, String[] dest) {
+    update(names(src), dest, () -> model.rgbSplit(src, dest));
+  }
+
+  @Override
+  public void components(String src, ColorComponent[] components, String[] dest) {
+    update(names(src), dest, () -> model.components(src, components, dest));
+  }
+
+  @Override
+  public void rgbCombine(String[] imageArray, String dest) {
+    update(imageArray, names(dest), () -> model.rgbCombine(imageArray, dest));
+  }
+
+  @Override
+  public void chop(float percentage, String src, String dest) {
+    update(names(src), names(dest), () -> model.chop(percentage, src, dest));
+  }
+
+  @Override
+  public void underlay(String original, String src, String dest) {
+    update(names(original, src), names(dest), () -> model.underlay(original, src, dest));
+  }
+
+  @Override
+  public void histogram(String src, String dest) {
+    update(names(src), names(dest), () -> model.histogram(src, dest));
+  }
+
+  @Override
+  public void colorCorrect(String src, String dest) {
+    update(names(src), names(dest), () -> model.colorCorrect(src, dest));
+  }
+
+  @Override
+  public void levelAdjust(int b, int m, int w, String src, String dest) {
+    update(names(src), names(dest), () -> model.levelAdjust(b, m, w, src, dest));
+  }
+
+  @Override
+  public void compress(float percent, String src, String dest) {
+    update(names(src), names(dest), () -> model.compress(percent, src, dest));
+  }
+
+  @Override
+  public ArrayList<ArrayList<ArrayList<Integer>>> getRgbaArray(String name) {
+    return locked(names(name), names(), () -> model.getRgbaArray(name));
+  }
+
+  @Override
+  public Image getImage(String name) {
+    return locked(names(name), names(), () -> model.getImage(name));
+  }
+
+  @Override
+  public int[][] getHistograms(String name) {
+    return locked(names(name), names(), () -> model.getHistograms(name));
+  }
+
+  @Override
+  public void load(String name, ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray) {
+    // Build the image before taking the lock, so readers of the name wait as little as possible
+    Image image = Image.fromRgbaArray(rgbaArray);
+    load(name, image);
+  }
+
+  @Override
+  public void load(String name, Image image) {
+    update(names(), names(name), () -> model.load(name, image));
+  }
+
+  @Override
+  public void remove(String name) {
+    update(names(), names(name), () -> model.remove(name));
+  }
+
+  private static String[] names(String... names) {
+    return names;
+  }
+
+  private void update(String[] sources, String[] dests, Runnable operation) {
+    locked(sources, dests, () -> {
+      operation.run();
+      return null;
+    });
+  }
+
+  /**
+   * Runs an operation while holding the read locks of its sources and the write locks of its
+   * destinations. A stripe guarding both a source and a destination is only write locked.
+   *
+   * @param sources   the names of the images the operation reads.
+   * @param dests     the names of the images the operation writes.
+   * @param operation the operation.
+   * @return the result of the operation.
+   */
+  private <T> T locked(String[] sources, String[] dests, Supplier<T> operation) {
+    // Sorting the stripes gives every operation the same locking order
+    TreeMap<Integer, Boolean> stripes = new TreeMap<>();
+    for (String dest : dests) {
+      stripes.put(stripe(dest), true);
+    }
+    for (String src : sources) {
+      stripes.putIfAbsent(stripe(src), false);
+    }
+    for (Map.Entry<Integer, Boolean> stripe : stripes.entrySet()) {
+      lock(stripe.getKey(), stripe.getValue()).lock();
+    }
+    try {
+      return operation.get();
+    } finally {
+      for (Map.Entry<Integer, Boolean> stripe : stripes.descendingMap().entrySet()) {
+        lock(stripe.getKey(), stripe.getValue()).unlock();
+      }
+    }
+  }
+
+  private Lock lock(int stripe, boolean write) {
+    return write ? locks[stripe].writeLock() : locks[stripe].readLock();
+  }
+
+  private int stripe(String name) {
+    int hash = Objects.hashCode(name);
+    return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+  }
+}
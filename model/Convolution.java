@@ -0,0 +1,319 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The `Convolution` class applies a {@link Kernel} to the red, green and blue planes of an image.
+ * Pixels outside the image are read according to a {@link BorderMode}, and the alpha plane is kept
+ * as it is.
+ *
+ * <p>Separable kernels are applied as a horizontal pass into a buffer of unrounded sums, followed
+ * by a vertical pass over whole rows of that buffer. Other kernels are applied directly. Kernels
+ * with dyadic weights accumulate integers and shift the sums instead, which is exact. The
+ * floating-point sums are snapped to the nearest integer within {@link #SNAP} before truncating
+ * or rounding them, so both arithmetics give the same pixels.
+ *
+ * <p>Large images are split into bands of rows that are filtered in parallel on a fork/join pool.
+ * Each band copies its rows into a buffer padded with the halo the kernel reaches around them,
+ * filled in by the border mode, and writes only its own rows. Only the padding needs to know where
+ * the image ends, so every tap of the filtering loops is a full row with no bounds to check. The
+ * innermost loops run on {@link PixelKernels}, so they use vector instructions when available.
+ *
+ * <p>A simple cost model compares the multiply-adds of the direct or separable loops with the
+ * estimated cost of {@link FftConvolution}, and large kernels that are not separable go through
+ * the Fourier transform instead.
+ */
+final class Convolution {
+
+  // Floating-point sums this close to an integer are taken as that integer
+  static final double SNAP = 1e-6;
+  // Below this many multiply-adds a band is not worth splitting any further
+  private static final long SEQUENTIAL_THRESHOLD = 1L << 18;
+
+  private final ForkJoinPool pool;
+  private final PixelKernels kernels;
+  private final FftConvolution fft;
+
+  /**
+   * Constructs an engine that filters large images in row bands on the given pool.
+   *
+   * @param pool    the pool running the bands, or null to always filter on the calling thread.
+   * @param kernels the kernels running the innermost loops.
+   */
+  Convolution(ForkJoinPool pool, PixelKernels kernels) {
+    this.pool = pool;
+    this.kernels = kernels;
+    this.fft = new FftConvolution(pool);
+  }
+
+  /**
+   * Convolves an image with a kernel, counting pixels outside the image as zero.
+   *
+   * @param image  the image to be filtered.
+   * @param kernel the kernel.
+   * @return a new image holding the filtered pixels.
+   */
+  Image convolve(Image image, Kernel kernel) {
+    return convolve(image, kernel, BorderMode.ZERO);
+  }
+
+  /**
+   * Convolves an image with a kernel, truncating the sums. The result does not depend on how the
+   * rows are split into bands, since every pixel is computed the same way on any thread.
+   *
+   * @param image  the image to be filtered.
+   * @param kernel the kernel.
+   * @param border how the pixels outside the image are read.
+   * @return a new image holding the filtered pixels.
+   */
+  Image convolve(Image image, Kernel kernel, BorderMode border) {
+    return convolve(image, kernel, border, false);
+  }
+
+  /**
+   * Convolves an image with a kernel, either truncating the sums or rounding them to the nearest
+   * integer.
+   *
+   * @param image  the image to be filtered.
+   * @param kernel the kernel.
+   * @param border how the pixels outside the image are read.
+   * @param round  whether to round the sums instead of truncating them.
+   * @return a new image holding the filtered pixels.
+   */
+  Image convolve(Image image, Kernel kernel, BorderMode border, boolean round) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    byte[][] filtered = new byte[3][width * height];
+    Band band = new Band(image, kernel, border, round, filtered, 0, height);
+    int tileSize = FftConvolution.tileSize(kernel.size(), width, height);
+    if (FftConvolution.cost(tileSize, kernel.size(), width, height) < band.cost()) {
+      return fft.convolve(image, kernel, border, round, tileSize);
+    }
+    if (pool == null || band.cost() <= SEQUENTIAL_THRESHOLD) {
+      band.filter();
+    } else {
+      pool.invoke(band);
+    }
+    return new Image(new PlanarImage(width, height, filtered[0], filtered[1], filtered[2],
+        image.channelPlane(3)));
+  }
+
+  /*
+   * The passes below add one weighted tap at a time to a whole row of sums. Each sum still
+   * receives its taps in the same order as a loop over the taps of one pixel would add them, so
+   * the rounding is the same. Row 0 of the padded buffer holds the first halo row above the band,
+   * and column 0 the first halo column left of the image.
+   */
+
+  private void direct(int[] pixels, int paddedWidth, int width, Kernel kernel, boolean round,
+      byte[] filtered, int fromY, int toY, double[] sums) {
+    double[][] weights = kernel.weights();
+    int size = weights.length;
+    for (int y = fromY; y < toY; y++) {
+      Arrays.fill(sums, 0.0);
+      for (int i = 0; i < size; i++) {
+        for (int j = 0; j < size; j++) {
+          kernels.accumulate(pixels, (y - fromY + j) * paddedWidth + i, weights[i][j], sums, 0,
+              width);
+        }
+      }
+      int row = y * width;
+      for (int x = 0; x < width; x++) {
+        filtered[row + x] = clamp(sums[x], round);
+      }
+    }
+  }
+
+  private void directFixed(int[] pixels, int paddedWidth, int width, Kernel.Dyadic dyadic,
+      int size, boolean round, byte[] filtered, int fromY, int toY, int[] sums) {
+    int[] weights = dyadic.weights;
+    for (int y = fromY; y < toY; y++) {
+      Arrays.fill(sums, 0);
+      for (int i = 0; i < size; i++) {
+        for (int j = 0; j < size; j++) {
+          kernels.accumulate(pixels, (y - fromY + j) * paddedWidth + i, weights[i * size + j],
+              sums, 0, width);
+        }
+      }
+      int row = y * width;
+      for (int x = 0; x < width; x++) {
+        filtered[row + x] = clamp(sums[x], dyadic.shift, round);
+      }
+    }
+  }
+
+  private void separable(int[] pixels, int paddedWidth, int paddedRows, int width, Kernel kernel,
+      boolean round, byte[] filtered, int fromY, int toY, double[] rows, double[] sums) {
+    double[] xWeights = kernel.xWeights();
+    double[] yWeights = kernel.yWeights();
+
+    // Horizontal pass over the band and its halo rows, kept unrounded so that the result
+    // matches the direct convolution
+    Arrays.fill(rows, 0.0);
+    for (int r = 0; r < paddedRows; r++) {
+      for (int i = 0; i < xWeights.length; i++) {
+        kernels.accumulate(pixels, r * paddedWidth + i, xWeights[i], rows, r * width, width);
+      }
+    }
+
+    // Vertical pass, adding whole weighted rows so the inner loop walks memory in order
+    for (int y = fromY; y < toY; y++) {
+      Arrays.fill(sums, 0.0);
+      for (int j = 0; j < yWeights.length; j++) {
+        kernels.accumulate(rows, (y - fromY + j) * width, yWeights[j], sums, 0, width);
+      }
+      int row = y * width;
+      for (int x = 0; x < width; x++) {
+        filtered[row + x] = clamp(sums[x], round);
+      }
+    }
+  }
+
+  private void separableFixed(int[] pixels, int paddedWidth, int paddedRows, int width,
+      Kernel.Dyadic[] passes, boolean round, byte[] filtered, int fromY, int toY, int[] rows,
+      int[] sums) {
+    int[] xWeights = passes[0].weights;
+    int[] yWeights = passes[1].weights;
+    int shift = passes[0].shift + passes[1].shift;
+
+    Arrays.fill(rows, 0);
+    for (int r = 0; r < paddedRows; r++) {
+      for (int i = 0; i < xWeights.length; i++) {
+        kernels.accumulate(pixels, r * paddedWidth + i, xWeights[i], rows, r * width, width);
+      }
+    }
+
+    for (int y = fromY; y < toY; y++) {
+      Arrays.fill(sums, 0);
+      for (int j = 0; j < yWeights.length; j++) {
+        kernels.accumulate(rows, (y - fromY + j) * width, yWeights[j], sums, 0, width);
+      }
+      int row = y * width;
+      for (int x = 0; x < width; x++) {
+        filtered[row + x] = clamp(sums[x], shift, round);
+      }
+    }
+  }
+
+  /**
+   * Copies the rows of a channel a band reads into its padded buffer, filling the halo around the
+   * image according to the border mode. The rows are read from the image a row at a time, so an
+   * off-heap image is never converted whole.
+   */
+  private static void pad(Image image, int channel, BorderMode border, int halo, int firstRow,
+      int paddedRows, int[] pixels) {
+    int width = image.getWidth();
+    int paddedWidth = width + 2 * halo;
+    for (int r = 0; r < paddedRows; r++) {
+      int y = border.resolve(firstRow + r, image.getHeight());
+      int start = r * paddedWidth;
+      if (y < 0) {
+        Arrays.fill(pixels, start, start + paddedWidth, 0);
+        continue;
+      }
+      image.readChannel(channel, 0, y, width, pixels, start + halo);
+      // Only the strips left and right of the image need their columns resolved, and they copy
+      // the columns of the row just read
+      for (int u = 0; u < halo; u++) {
+        int left = border.resolve(u - halo, width);
+        int right = border.resolve(width + u, width);
+        pixels[start + u] = left < 0 ? 0 : pixels[start + halo + left];
+        pixels[start + halo + width + u] = right < 0 ? 0 : pixels[start + halo + right];
+      }
+    }
+  }
+
+  /**
+   * Clamps a floating-point sum to a byte, truncating it or rounding it half up. Sums within
+   * {@link #SNAP} below an integer, or below a half when rounding, are taken as reaching it, as
+   * the exact sum would be, so the rounding errors of the order in which the taps are added do
+   * not change the pixel.
+   */
+  static byte clamp(double value, boolean round) {
+    double floor = Math.floor(value + (round ? 0.5 : 0) + SNAP);
+    return (byte) (int) Math.min(255, Math.max(0, floor));
+  }
+
+  private static byte clamp(int sum, int shift, boolean round) {
+    // The same as clamping sum / 2^shift and truncating or rounding it, since the division is
+    // exact
+    int half = round && shift > 0 ? 1 << (shift - 1) : 0;
+    return (byte) (sum + half <= 0 ? 0 : Math.min(255, (sum + half) >> shift));
+  }
+
+  /**
+   * A band of rows of the image, filtered on its own or split in two halves run in parallel.
+   */
+  private class Band extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Image image;
+    private final Kernel kernel;
+    private final BorderMode border;
+    private final boolean round;
+    private final byte[][] filtered;
+    private final int fromY;
+    private final int toY;
+
+    private Band(Image image, Kernel kernel, BorderMode border, boolean round,
+        byte[][] filtered, int fromY, int toY) {
+      this.image = image;
+      this.kernel = kernel;
+      this.border = border;
+      this.round = round;
+      this.filtered = filtered;
+      this.fromY = fromY;
+      this.toY = toY;
+    }
+
+    private long cost() {
+      long taps = kernel.isSeparable() ? 2L * kernel.size() : (long) kernel.size() * kernel.size();
+      return 3 * taps * image.getWidth() * (toY - fromY);
+    }
+
+    @Override
+    protected void compute() {
+      if (cost() <= SEQUENTIAL_THRESHOLD || toY - fromY < 2) {
+        filter();
+        return;
+      }
+      int middle = (fromY + toY) >>> 1;
+      invokeAll(new Band(image, kernel, border, round, filtered, fromY, middle),
+          new Band(image, kernel, border, round, filtered, middle, toY));
+    }
+
+    private void filter() {
+      int width = image.getWidth();
+      int halo = kernel.size() / 2;
+      // The band also needs the halo its taps reach around it
+      int paddedWidth = width + 2 * halo;
+      int paddedRows = toY - fromY + 2 * halo;
+      int[] pixels = new int[paddedRows * paddedWidth];
+      Kernel.Dyadic[] passes = kernel.separableDyadic();
+      boolean fixed = passes != null || (!kernel.isSeparable() && kernel.dyadic() != null);
+      int bufferSize = paddedRows * width;
+      double[] rows = kernel.isSeparable() && passes == null ? new double[bufferSize] : null;
+      int[] fixedRows = passes != null ? new int[bufferSize] : null;
+      double[] sums = fixed ? null : new double[width];
+      int[] fixedSums = fixed ? new int[width] : null;
+      for (int c = 0; c < 3; c++) {
+        pad(image, c, border, halo, fromY - halo, paddedRows, pixels);
+        if (passes != null) {
+          separableFixed(pixels, paddedWidth, paddedRows, width, passes, round, filtered[c],
+              fromY, toY, fixedRows, fixedSums);
+        } else if (kernel.isSeparable()) {
+          separable(pixels, paddedWidth, paddedRows, width, kernel, round, filtered[c], fromY,
+              toY, rows, sums);
+        } else if (kernel.dyadic() != null) {
+          directFixed(pixels, paddedWidth, width, kernel.dyadic(), kernel.size(), round,
+              filtered[c], fromY, toY, fixedSums);
+        } else {
+          direct(pixels, paddedWidth, width, kernel, round, filtered[c], fromY, toY, sums);
+        }
+      }
+    }
+  }
+}
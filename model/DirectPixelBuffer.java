@@ -0,0 +1,80 @@
+package model;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * The `DirectPixelBuffer` class holds ARGB pixels outside the Java heap, in a direct byte buffer.
+ * The image store counts the stored images that read from the buffer and frees the memory as soon
+ * as the last of them is replaced or removed, instead of waiting for the garbage collector.
+ */
+class DirectPixelBuffer {
+
+  private static final Method INVOKE_CLEANER;
+  private static final Object UNSAFE;
+
+  static {
+    Method invokeCleaner = null;
+    Object unsafe = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      unsafe = field.get(null);
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Without it the memory is freed once the buffer becomes unreachable
+    }
+    INVOKE_CLEANER = invokeCleaner;
+    UNSAFE = unsafe;
+  }
+
+  private final ByteBuffer buffer;
+  private final IntBuffer pixels;
+  private int references;
+  private boolean freed;
+
+  /**
+   * Allocates a buffer for the given number of pixels.
+   *
+   * @param size the number of pixels.
+   */
+  DirectPixelBuffer(int size) {
+    if (size > Integer.MAX_VALUE / 4) {
+      throw new IllegalArgumentException("The image is too large to be stored off the heap.");
+    }
+    this.buffer = ByteBuffer.allocateDirect(4 * size).order(ByteOrder.nativeOrder());
+    this.pixels = buffer.asIntBuffer();
+  }
+
+  IntBuffer pixels() {
+    return pixels;
+  }
+
+  long size() {
+    return pixels.capacity();
+  }
+
+  void retain() {
+    references++;
+  }
+
+  /**
+   * Records that one stored image no longer reads from this buffer, and frees the memory if it was
+   * the last one.
+   */
+  void release() {
+    references--;
+    if (references == 0 && !freed && INVOKE_CLEANER != null) {
+      freed = true;
+      try {
+        INVOKE_CLEANER.invoke(UNSAFE, buffer);
+      } catch (ReflectiveOperationException e) {
+        // Left to the garbage collector
+      }
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package model;
+
+/**
+ * The `Fft` class computes discrete Fourier transforms of square arrays of complex values whose
+ * side is a power of two, with the iterative radix-2 algorithm. The tables of twiddle factors and
+ * bit-reversed indices are built once per size, so one instance serves every tile of that size.
+ *
+ * <p>The arrays hold the rows one after another. Both passes transform columns, with a transpose
+ * between them, so a forward transform leaves the spectrum transposed and an inverse transform
+ * expects it that way.
+ */
+final class Fft {
+
+  private static final int TRANSPOSE_BLOCK = 32;
+
+  private final int size;
+  private final int[] reversed;
+  private final double[] cos;
+  private final double[] sin;
+
+  /**
+   * Constructs the transform of arrays of the given side.
+   *
+   * @param size the number of values on each side, a power of two.
+   */
+  Fft(int size) {
+    if (size < 1 || Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("The size of a transform must be a power of two!");
+    }
+    this.size = size;
+    this.reversed = new int[size];
+    int bits = Integer.numberOfTrailingZeros(size);
+    for (int i = 0; i < size; i++) {
+      reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+    }
+    this.cos = new double[size / 2];
+    this.sin = new double[size / 2];
+    for (int i = 0; i < size / 2; i++) {
+      cos[i] = Math.cos(2 * Math.PI * i / size);
+      sin[i] = Math.sin(2 * Math.PI * i / size);
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Transforms a square array in place into its transposed spectrum.
+   *
+   * @param re the real parts.
+   * @param im the imaginary parts.
+   */
+  void forward(double[] re, double[] im) {
+    columns(re, im, false);
+    transpose(re);
+    transpose(im);
+    columns(re, im, false);
+  }
+
+  /**
+   * Transforms a transposed spectrum in place back into the square array it came from, scaled so
+   * that it is the exact inverse of {@link #forward}.
+   *
+   * @param re the real parts.
+   * @param im the imaginary parts.
+   */
+  void inverse(double[] re, double[] im) {
+    columns(re, im, true);
+    transpose(re);
+    transpose(im);
+    columns(re, im, true);
+    double scale = 1.0 / ((double) size * size);
+    for (int i = 0; i < re.length; i++) {
+      re[i] *= scale;
+      im[i] *= scale;
+    }
+  }
+
+  /**
+   * Transforms every column at once. Each butterfly combines two whole rows, so the innermost
+   * loop walks both of them in order and the compiler can use vector instructions for it.
+   */
+  private void columns(double[] re, double[] im, boolean inverse) {
+    for (int i = 0; i < size; i++) {
+      int j = reversed[i];
+      if (i < j) {
+        swapRows(re, i, j);
+        swapRows(im, i, j);
+      }
+    }
+    double sign = inverse ? 1 : -1;
+    for (int half = 1; half < size; half <<= 1) {
+      int step = size / (2 * half);
+      for (int start = 0; start < size; start += 2 * half) {
+        for (int k = 0; k < half; k++) {
+          double wr = cos[k * step];
+          double wi = sign * sin[k * step];
+          int a = (start + k) * size;
+          int b = a + half * size;
+          for (int x = 0; x < size; x++) {
+            double tr = re[b + x] * wr - im[b + x] * wi;
+            double ti = re[b + x] * wi + im[b + x] * wr;
+            re[b + x] = re[a + x] - tr;
+            im[b + x] = im[a + x] - ti;
+            re[a + x] += tr;
+            im[a + x] += ti;
+          }
+        }
+      }
+    }
+  }
+
+  private void swapRows(double[] values, int i, int j) {
+    for (int x = 0; x < size; x++) {
+      double t = values[i * size + x];
+      values[i * size + x] = values[j * size + x];
+      values[j * size + x] = t;
+    }
+  }
+
+  private void transpose(double[] values) {
+    // In square blocks, so the columns being read stay in the cache
+    for (int y0 = 0; y0 < size; y0 += TRANSPOSE_BLOCK) {
+      for (int x0 = y0; x0 < size; x0 += TRANSPOSE_BLOCK) {
+        int toY = Math.min(size, y0 + TRANSPOSE_BLOCK);
+        int toX = Math.min(size, x0 + TRANSPOSE_BLOCK);
+        for (int y = y0; y < toY; y++) {
+          for (int x = Math.max(x0, y + 1); x < toX; x++) {
+            double t = values[y * size + x];
+            values[y * size + x] = values[x * size + y];
+            values[x * size + y] = t;
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package model;
+
+/**
+ * The `HaarWavelet` class runs the two-dimensional Haar wavelet transform of the compress command
+ * in place, on a square plane of doubles whose side is a power of two. The plane is indexed by
+ * column and then row, so column x holds the values from index x * size onwards.
+ *
+ * <p>Each level of the forward transform first transforms the whole of each of the first
+ * columns, and then the first rows, up to the side of the level, which halves at each level. The
+ * inverse runs the same steps backwards. Each step replaces a line with the normalized sums of its
+ * pairs of values followed by their normalized differences, divided by the square root of two
+ * exactly as the compress command always has, so the coefficients keep their values to the last
+ * bit.
+ *
+ * <p>The columns are contiguous in the plane. The rows of the block a level works on are made
+ * contiguous by transposing the block in place, a tile at a time so both tiles being swapped stay
+ * in the cache, and transposing it back afterwards. An engine allocates its single line buffer
+ * once and can be reused for any number of planes of its size.
+ */
+final class HaarWavelet {
+
+  private static final double SQRT2 = Math.sqrt(2);
+  // The side of the tiles swapped at a time: a tile and its mirror take 16 KiB, and stay in cache
+  private static final int TILE = 32;
+
+  private final int size;
+  private final double[] line;
+
+  /**
+   * Constructs an engine for planes of the given side.
+   *
+   * @param size the number of columns and rows of the planes, a power of two.
+   */
+  HaarWavelet(int size) {
+    this.size = size;
+    this.line = new double[size];
+  }
+
+  /**
+   * Transforms a plane into its wavelet coefficients.
+   *
+   * @param plane the values, indexed by column and then row, replaced by the coefficients.
+   */
+  void forward(double[] plane) {
+    for (int c = size; c > 1; c /= 2) {
+      for (int x = 0; x < c; x++) {
+        forward(plane, x * size, size);
+      }
+      transpose(plane, c);
+      for (int y = 0; y < c; y++) {
+        forward(plane, y * size, c);
+      }
+      transpose(plane, c);
+    }
+  }
+
+  /**
+   * Transforms the wavelet coefficients of a plane back into its values.
+   *
+   * @param plane the coefficients, indexed by column and then row, replaced by the values.
+   */
+  void inverse(double[] plane) {
+    for (int c = 2; c <= size; c *= 2) {
+      transpose(plane, c);
+      for (int y = 0; y < c; y++) {
+        inverse(plane, y * size, c);
+      }
+      transpose(plane, c);
+      for (int x = 0; x < c; x++) {
+        inverse(plane, x * size, size);
+      }
+    }
+  }
+
+  private void forward(double[] plane, int offset, int length) {
+    int half = length / 2;
+    for (int i = 0; i < half; i++) {
+      double a = plane[offset + 2 * i];
+      double b = plane[offset + 2 * i + 1];
+      line[i] = (a + b) / SQRT2;
+      line[half + i] = (a - b) / SQRT2;
+    }
+    System.arraycopy(line, 0, plane, offset, length);
+  }
+
+  private void inverse(double[] plane, int offset, int length) {
+    int half = length / 2;
+    for (int i = 0; i < half; i++) {
+      double average = plane[offset + i];
+      double difference = plane[offset + half + i];
+      line[2 * i] = (average + difference) / SQRT2;
+      line[2 * i + 1] = (average - difference) / SQRT2;
+    }
+    System.arraycopy(line, 0, plane, offset, length);
+  }
+
+  /**
+   * Transposes the top-left block of a plane in place, swapping each tile above the diagonal with
+   * its mirror below it.
+   */
+  private void transpose(double[] plane, int block) {
+    for (int tileX = 0; tileX < block; tileX += TILE) {
+      int endX = Math.min(tileX + TILE, block);
+      for (int tileY = tileX; tileY < block; tileY += TILE) {
+        int endY = Math.min(tileY + TILE, block);
+        for (int x = tileX; x < endX; x++) {
+          for (int y = Math.max(tileY, x + 1); y < endY; y++) {
+            double value = plane[x * size + y];
+            plane[x * size + y] = plane[y * size + x];
+            plane[y * size + x] = value;
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * The `HistogramRenderer` class draws the histograms of the red, green and blue channels of an
+ * image as a 256 by 256 line chart over a light gray grid.
+ *
+ * <p>The chart is rasterized straight into the interleaved pixels of the image it produces, with
+ * the same lines Java2D draws for it, so no AWT graphics are needed and it renders on headless
+ * servers as well.
+ */
+final class HistogramRenderer {
+
+  private static final int SIZE = 256;
+  private static final int GRID = 16;
+  private static final int WHITE = 0xFFFFFFFF;
+  private static final int LIGHT_GRAY = 0xFFC0C0C0;
+  private static final int[] COLORS = {0xFFFF0000, 0xFF00FF00, 0xFF0000FF};
+
+  private HistogramRenderer() {
+  }
+
+  /**
+   * Draws the chart of the histograms of an image. Each count is scaled by the largest count of
+   * any channel, and each channel is drawn over the ones before it.
+   *
+   * @param histograms the counts, indexed by channel and then value.
+   * @return a new image holding the chart.
+   */
+  static Image render(int[][] histograms) {
+    int[] pixels = new int[SIZE * SIZE];
+    for (int y = 0; y < SIZE; y++) {
+      int row = y * SIZE;
+      if (y % GRID == 0) {
+        Arrays.fill(pixels, row, row + SIZE, LIGHT_GRAY);
+        continue;
+      }
+      for (int x = 0; x < SIZE; x++) {
+        pixels[row + x] = x % GRID == 0 ? LIGHT_GRAY : WHITE;
+      }
+    }
+    int maxCount = 0;
+    for (int[] histogram : histograms) {
+      for (int count : histogram) {
+        maxCount = Math.max(maxCount, count);
+      }
+    }
+    for (int c = 0; c < 3; c++) {
+      int[] histogram = histograms[c];
+      int previous = height(histogram[0], maxCount);
+      for (int x = 0; x < SIZE - 1; x++) {
+        int next = height(histogram[x + 1], maxCount);
+        drawLine(pixels, x, SIZE - 1 - previous, x + 1, SIZE - 1 - next, COLORS[c]);
+        previous = next;
+      }
+    }
+    return new Image(SIZE, SIZE, pixels);
+  }
+
+  private static int height(int count, int maxCount) {
+    // An empty image has no counts, and divides zero by zero into a height of zero
+    return (int) (((double) count / maxCount) * (SIZE - 1));
+  }
+
+  /**
+   * Draws a line between two pixels of the chart, both ends included, with Bresenham's
+   * algorithm.
+   */
+  private static void drawLine(int[] pixels, int x1, int y1, int x2, int y2, int color) {
+    int dx = Math.abs(x2 - x1);
+    int dy = Math.abs(y2 - y1);
+    int stepX = x2 < x1 ? -1 : 1;
+    int stepY = y2 < y1 ? -SIZE : SIZE;
+    int major = Math.max(dx, dy);
+    int minor = Math.min(dx, dy);
+    int stepMajor = dx >= dy ? stepX : stepY;
+    int stepMinor = dx >= dy ? stepY : stepX;
+    int index = y1 * SIZE + x1;
+    int error = -major;
+    for (int i = 0; i <= major; i++) {
+      pixels[index] = color;
+      error += 2 * minor;
+      if (error >= 0) {
+        index += stepMinor;
+        error -= 2 * major;
+      }
+      index += stepMajor;
+    }
+  }
+}
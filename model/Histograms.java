@@ -0,0 +1,120 @@
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The `Histograms` class counts the pixels of an image with each value of the red, green and
+ * blue channels.
+ *
+ * <p>Large images are split into ranges of pixels counted in parallel on a fork/join pool, each
+ * into bins of its own, which are added up once the ranges are counted. The counts are kept on
+ * the image, so an image that was not modified since is never counted again.
+ */
+final class Histograms {
+
+  // Below this number of pixels, counting is faster than splitting the work
+  private static final int SEQUENTIAL_THRESHOLD = 1 << 16;
+
+  private Histograms() {
+  }
+
+  /**
+   * Counts the pixels of an image with each channel value, reading the layout the image already
+   * holds, unless they were counted since the image was last modified.
+   *
+   * @param image the image.
+   * @param pool  the pool counting large images, or null to count on the calling thread.
+   * @return the counts, indexed by channel and then value, which must not be modified.
+   */
+  static int[][] count(Image image, ForkJoinPool pool) {
+    int[][] histograms = image.cachedHistograms();
+    if (histograms != null) {
+      return histograms;
+    }
+    // Stream each plane on its own, if the image holds them
+    PlanarImage planes = image.hasLayout(ImageLayout.PLANAR) ? image.planar() : null;
+    Range range = new Range(image, planes, 0, image.getWidth() * image.getHeight());
+    histograms = pool == null || range.size() <= SEQUENTIAL_THRESHOLD
+        ? range.count() : pool.invoke(range);
+    image.cacheHistograms(histograms);
+    return histograms;
+  }
+
+  /**
+   * Copies the counts of an image, so they can be handed out.
+   *
+   * @param histograms the counts, indexed by channel and then value.
+   * @return a new array with the same counts.
+   */
+  static int[][] copy(int[][] histograms) {
+    return new int[][] {histograms[0].clone(), histograms[1].clone(), histograms[2].clone()};
+  }
+
+  /**
+   * A range of the pixels of an image, counted on its own or split in two halves counted in
+   * parallel.
+   */
+  private static class Range extends RecursiveTask<int[][]> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Image image;
+    private final PlanarImage planes;
+    private final int from;
+    private final int to;
+
+    private Range(Image image, PlanarImage planes, int from, int to) {
+      this.image = image;
+      this.planes = planes;
+      this.from = from;
+      this.to = to;
+    }
+
+    private int size() {
+      return to - from;
+    }
+
+    @Override
+    protected int[][] compute() {
+      if (size() <= SEQUENTIAL_THRESHOLD) {
+        return count();
+      }
+      int middle = (from + to) >>> 1;
+      Range first = new Range(image, planes, from, middle);
+      first.fork();
+      int[][] histograms = new Range(image, planes, middle, to).compute();
+      int[][] other = first.join();
+      for (int c = 0; c < 3; c++) {
+        for (int value = 0; value < 256; value++) {
+          histograms[c][value] += other[c][value];
+        }
+      }
+      return histograms;
+    }
+
+    private int[][] count() {
+      int[][] histograms = new int[3][256];
+      if (planes != null) {
+        for (int c = 0; c < 3; c++) {
+          byte[] plane = planes.plane(c);
+          int[] histogram = histograms[c];
+          for (int i = from; i < to; i++) {
+            histogram[plane[i] & 0xFF]++;
+          }
+        }
+        return histograms;
+      }
+      int[] red = histograms[0];
+      int[] green = histograms[1];
+      int[] blue = histograms[2];
+      for (int i = from; i < to; i++) {
+        int argb = image.getArgb(i);
+        red[Image.red(argb)]++;
+        green[Image.green(argb)]++;
+        blue[Image.blue(argb)]++;
+      }
+      return histograms;
+    }
+  }
+}
@@ -52,6 +52,16 @@ public interface IModel {
    */
   void blur(String src, String dest);
 
+  /**
+   * Blur a region of an image, keeping the pixels outside it. The pixels of the region are those
+   * blurring the whole image gives.
+   *
+   * @param src    the name of the source image.
+   * @param dest   the name of the destination image.
+   * @param region the region to blur.
+   */
+  void blur(String src, String dest, Region region);
+
   /**
    * Sharpen an image using a sharpening filter.
    *
@@ -60,6 +70,93 @@ public interface IModel {
    */
   void sharpen(String src, String dest);
 
+  /**
+   * Sharpen a region of an image, keeping the pixels outside it. The pixels of the region are
+   * those sharpening the whole image gives.
+   *
+   * @param src    the name of the source image.
+   * @param dest   the name of the destination image.
+   * @param region the region to sharpen.
+   */
+  void sharpen(String src, String dest, Region region);
+
+  /**
+   * Blur an image with an approximate Gaussian of any size. The cost per pixel is the same for
+   * any radius, and pixels outside the image are left out of the averages. Standard deviations
+   * below 2 are convolved with a sampled Gaussian instead, which like blur counts pixels outside
+   * the image as zero.
+   *
+   * @param sigma the standard deviation of the Gaussian, in pixels.
+   * @param src   the name of the source image.
+   * @param dest  the name of the destination image.
+   */
+  void blurRadius(double sigma, String src, String dest);
+
+  /**
+   * Convolve an image with a user-defined kernel. Like blur and sharpen, the kernel is applied
+   * without flipping it.
+   *
+   * @param kernel the weights of the kernel, indexed by column offset and then row offset. The
+   *               kernel must be square and of odd size.
+   * @param border how the pixels outside the image are read. Blur and sharpen count them as
+   *               zero.
+   * @param src    the name of the source image.
+   * @param dest   the name of the destination image.
+   */
+  void convolve(double[][] kernel, BorderMode border, String src, String dest);
+
+  /**
+   * Convolve a region of an image with a user-defined kernel, keeping the pixels outside it. The
+   * pixels of the region are those convolving the whole image gives.
+   *
+   * @param kernel the weights of the kernel, indexed by column offset and then row offset.
+   * @param border how the pixels outside the image are read.
+   * @param src    the name of the source image.
+   * @param dest   the name of the destination image.
+   * @param region the region to filter.
+   */
+  void convolve(double[][] kernel, BorderMode border, String src, String dest, Region region);
+
+  /**
+   * Transform the red, green and blue channels of every pixel with a color matrix. Sepia, luma
+   * and intensity are presets of it.
+   *
+   * @param matrix the color matrix.
+   * @param src    the name of the source image.
+   * @param dest   the name of the destination image.
+   */
+  void colorMatrix(ColorMatrix matrix, String src, String dest);
+
+  /**
+   * Map the red, green and blue channels of every pixel with a point operation, such as a gamma
+   * curve or an inversion.
+   *
+   * @param operation the point operation.
+   * @param src       the name of the source image.
+   * @param dest      the name of the destination image.
+   */
+  void pointOperation(PointOperation operation, String src, String dest);
+
+  /**
+   * Apply a run of per-pixel operations in a single pass, storing only the result of the last one.
+   *
+   * @param chain the operations.
+   * @param src   the name of the source image.
+   * @param dest  the name of the destination image.
+   */
+  void applyChain(PointChain chain, String src, String dest);
+
+  /**
+   * Apply a run of per-pixel operations to a region of an image, keeping the pixels outside it.
+   * Color corrections align the histograms of the whole image.
+   *
+   * @param chain  the operations.
+   * @param src    the name of the source image.
+   * @param dest   the name of the destination image.
+   * @param region the region to process.
+   */
+  void applyChain(PointChain chain, String src, String dest, Region region);
+
   /**
    * Create an image that visualizes the value component of the image.
    *
@@ -68,6 +165,15 @@ public interface IModel {
    */
   void valueComponent(String src, String dest);
 
+  /**
+   * Replace a region of an image with its value component, keeping the pixels outside it.
+   *
+   * @param src    the name of the source image.
+   * @param dest   the name of the destination image.
+   * @param region the region to process.
+   */
+  void valueComponent(String src, String dest, Region region);
+
   /**
    * Create an image that visualizes the intensity component of the image.
    *
@@ -116,6 +222,15 @@ public interface IModel {
    */
   void rgbSplit(String src, String[] dest);
 
+  /**
+   * Extracts several components of an image at once, in a single pass over its pixels.
+   *
+   * @param src        the name of the source image.
+   * @param components the components to extract.
+   * @param dest       the names of the destination images, one per component in the same order.
+   */
+  void components(String src, ColorComponent[] components, String[] dest);
+
   /**
    * Combine three greyscale image into a single color image whose R,G,B values come from the three
    * images.
@@ -182,14 +297,56 @@ public interface IModel {
   void compress(float percent, String src, String dest) throws IllegalArgumentException;
 
   /**
-   * Retrieves the pixel data of all three channels of the image.
+   * Retrieves the pixel data of all three channels of the image. This is a compatibility adapter
+   * over {@link #getImage(String)} and returns a new array on every call.
    *
    * @param name the name of the image.
    * @return a three-dimensional array of pixels representing the image.
    */
   ArrayList<ArrayList<ArrayList<Integer>>> getRgbaArray(String name);
 
+  /**
+   * Retrieves the image stored under the given name.
+   *
+   * @param name the name of the image.
+   * @return the image, or null if no image is stored under the name.
+   */
+  Image getImage(String name);
+
+  /**
+   * Retrieves the histograms of the image stored under the given name: the number of its pixels
+   * with each value of the red, green and blue channels. They are counted once per image and kept
+   * until the image changes, so reading them again is free.
+   *
+   * @param name the name of the image.
+   * @return a new array of counts, indexed by channel and then value, or null if no image is
+   *         stored under the name.
+   */
+  int[][] getHistograms(String name);
+
+  /**
+   * Stores the pixels of a three-dimensional RGBA array under the given name. This is a
+   * compatibility adapter over {@link #load(String, Image)}.
+   *
+   * @param name      the name of the image.
+   * @param rgbaArray the pixels indexed by column, row and channel.
+   */
   void load(String name, ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray);
 
+  /**
+   * Stores an image under the given name.
+   *
+   * @param name  the name of the image.
+   * @param image the image to be stored.
+   */
+  void load(String name, Image image);
+
+  /**
+   * Removes the image stored under the given name, if any.
+   *
+   * @param name the name of the image.
+   */
+  void remove(String name);
+
 
 }
@@ -5,4 +5,6 @@ import java.awt.image.BufferedImage;
 public interface IROModel {
   BufferedImage getBufferedImage(String imageName);
 
+  int[][] getHistograms(String imageName);
+
 }
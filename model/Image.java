@@ -0,0 +1,759 @@
+package model;
+
+import java.awt.image.BufferedImage;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The `Image` class represents an image whose pixels are packed into a single primitive array.
+ * Each pixel is stored as one ARGB int, and the pixels are laid out row by row, so the pixel at
+ * column x and row y is found at index y * width + x.
+ *
+ * <p>An image may also be held as a {@link PlanarImage}, with one plane per channel. Operations
+ * ask for the {@link ImageLayout} they prefer, and the image converts between the two layouts on
+ * demand, keeping both until it is next modified.
+ *
+ * <p>Images can share their pixels through {@link #share()}. Shared pixels are copied only when
+ * one of the images sharing them is modified.
+ *
+ * <p>An image may also be a view over the pixels of another image, such as a flipped, cropped or
+ * channel-masked version of it. A view reads the pixels of its parent through an index transform
+ * and only copies them out when it is materialized, which happens when it is modified or
+ * converted. A view of a view combines both transforms over the original pixels, so chains of
+ * views never get deeper than one level.
+ *
+ * <p>The interleaved pixels of an image stored in an off-heap {@link ImageStore} live in a
+ * {@link DirectPixelBuffer}, and are read from there without being copied onto the heap. The
+ * kernels stream them through a small heap block, and the other layouts converted from them, as
+ * well as those of the views over them, are handed out without being kept, so they never stay on
+ * the heap behind the back of the store.
+ *
+ * <p>Stored images are never modified, and converting one to another layout only adds that layout
+ * next to the ones it already holds. A stored image can therefore be read from several threads
+ * while one of them converts it. Modifying an image is only safe on the thread that owns it.
+ *
+ * <p>The histograms of an image are kept once they are counted, and shared with the images that
+ * share its pixels, until the pixels are next modified.
+ */
+public class Image {
+
+  // The off-heap pixels read onto the heap at a time
+  private static final int BLOCK = 1 << 14;
+
+  private final int width;
+  private final int height;
+  private volatile int[] pixels;
+  private volatile PlanarImage planar;
+  private boolean shared;
+  private volatile IntBuffer direct;
+  private DirectPixelBuffer directBuffer;
+  private volatile IntBuffer base;
+  private int offset;
+  private int strideX;
+  private int strideY;
+  private int mask;
+  // The counts of each channel value, kept until the pixels are next modified
+  private volatile int[][] histograms;
+  // The number of layouts converted and kept so far, which a store checks to count them
+  private volatile int conversions;
+
+  /**
+   * Constructs a fully transparent black image of the given dimensions.
+   *
+   * @param width  the number of columns of the image.
+   * @param height the number of rows of the image.
+   */
+  public Image(int width, int height) {
+    this(width, height, new int[width * height]);
+  }
+
+  /**
+   * Constructs an image over the given ARGB pixels. The image takes ownership of the array.
+   *
+   * @param width  the number of columns of the image.
+   * @param height the number of rows of the image.
+   * @param pixels the ARGB pixels in row-major order.
+   */
+  public Image(int width, int height, int[] pixels) {
+    if (width < 0 || height < 0 || pixels.length != width * height) {
+      throw new IllegalArgumentException("Illegal image dimensions!");
+    }
+    this.width = width;
+    this.height = height;
+    this.pixels = pixels;
+  }
+
+  /**
+   * Constructs an image over the given channel planes.
+   *
+   * @param planar the planes of the image.
+   */
+  public Image(PlanarImage planar) {
+    this.width = planar.getWidth();
+    this.height = planar.getHeight();
+    this.planar = planar;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Gets the ARGB value of the pixel at the given position.
+   *
+   * @param x the column of the pixel.
+   * @param y the row of the pixel.
+   * @return the packed ARGB value of the pixel.
+   */
+  public int getArgb(int x, int y) {
+    int[] pixels = this.pixels;
+    if (pixels != null) {
+      return pixels[y * width + x];
+    }
+    IntBuffer base = this.base;
+    if (base != null) {
+      return base.get(offset + y * strideY + x * strideX) & mask;
+    }
+    return getArgb(y * width + x);
+  }
+
+  /**
+   * Sets the ARGB value of the pixel at the given position.
+   *
+   * @param x    the column of the pixel.
+   * @param y    the row of the pixel.
+   * @param argb the packed ARGB value of the pixel.
+   */
+  public void setArgb(int x, int y, int argb) {
+    setArgb(y * width + x, argb);
+  }
+
+  int getArgb(int index) {
+    int[] pixels = this.pixels;
+    if (pixels != null) {
+      return pixels[index];
+    }
+    IntBuffer direct = this.direct;
+    if (direct != null) {
+      return direct.get(index);
+    }
+    if (base != null) {
+      return getArgb(index % width, index / width);
+    }
+    return planar.getArgb(index);
+  }
+
+  void setArgb(int index, int argb) {
+    writablePixels()[index] = argb;
+  }
+
+  /**
+   * Gets the layout the pixels of this image are currently held in. An image that holds both
+   * layouts reports the interleaved one.
+   *
+   * @return the current layout of the image.
+   */
+  public ImageLayout getLayout() {
+    return hasLayout(ImageLayout.INTERLEAVED) || base != null
+        ? ImageLayout.INTERLEAVED : ImageLayout.PLANAR;
+  }
+
+  /**
+   * Checks whether the pixels of this image are available in the given layout without a
+   * conversion.
+   *
+   * @param layout the layout to check.
+   * @return true if the image holds its pixels in the layout.
+   */
+  public boolean hasLayout(ImageLayout layout) {
+    if (layout == ImageLayout.INTERLEAVED) {
+      return pixels != null || direct != null;
+    }
+    return planar != null;
+  }
+
+  /**
+   * Converts the pixels of this image to the given layout, keeping the current one as well, so
+   * that operations preferring the layout can read it directly. A view is materialized.
+   *
+   * @param layout the layout the pixels should be available in.
+   */
+  void prepare(ImageLayout layout) {
+    // Off-heap pixels are read as they are, since their conversions are not kept
+    if (isOffHeap()) {
+      return;
+    }
+    if (layout == ImageLayout.INTERLEAVED) {
+      interleaved();
+    } else {
+      planar();
+    }
+  }
+
+  /**
+   * Gets the pixels of this image as channel planes, converting them if needed. The planes of
+   * off-heap pixels are converted anew on each call.
+   *
+   * @return the planar form of this image.
+   */
+  public PlanarImage planar() {
+    PlanarImage planar = this.planar;
+    if (planar != null) {
+      return planar;
+    }
+    if (isOffHeap()) {
+      return PlanarImage.fromInterleaved(width, height, readPixels());
+    }
+    return convertToPlanar();
+  }
+
+  private synchronized PlanarImage convertToPlanar() {
+    if (planar == null) {
+      planar = PlanarImage.fromInterleaved(width, height, interleaved());
+      conversions++;
+    }
+    return planar;
+  }
+
+  /**
+   * Gets the interleaved pixels of this image for reading, converting them if needed. Off-heap
+   * pixels are copied instead, so the image stays off the heap. The returned array must not be
+   * modified.
+   *
+   * @return the ARGB pixels in row-major order.
+   */
+  int[] readPixels() {
+    if (pixels == null && isOffHeap()) {
+      int[] copy = new int[width * height];
+      readRun(0, copy, 0, copy.length);
+      return copy;
+    }
+    return interleaved();
+  }
+
+  /**
+   * Reads the interleaved pixels of this image in runs. Off-heap pixels are read a block at a
+   * time, so they are never copied onto the heap whole, and other images pass all their pixels in
+   * a single run. The runs must not be modified.
+   *
+   * @param consumer receives each run of pixels and the index of its first pixel.
+   */
+  void readPixels(ObjIntConsumer<int[]> consumer) {
+    if (pixels != null || !isOffHeap()) {
+      consumer.accept(interleaved(), 0);
+      return;
+    }
+    int size = width * height;
+    int[] block = new int[Math.min(BLOCK, size)];
+    for (int from = 0; from < size; from += BLOCK) {
+      int length = Math.min(BLOCK, size - from);
+      if (length < block.length) {
+        block = new int[length];
+      }
+      readRun(from, block, 0, length);
+      consumer.accept(block, from);
+    }
+  }
+
+  /**
+   * Maps the interleaved pixels of this image into a new array, with a kernel that maps a run of
+   * pixels into an array of the same length. Off-heap pixels are mapped a block at a time.
+   *
+   * @param kernel the kernel, taking the source and target runs.
+   * @return the mapped pixels in row-major order.
+   */
+  int[] mapPixels(BiConsumer<int[], int[]> kernel) {
+    int[] mapped = new int[width * height];
+    if (pixels != null || !isOffHeap()) {
+      kernel.accept(interleaved(), mapped);
+      return mapped;
+    }
+    int[] block = new int[Math.min(BLOCK, mapped.length)];
+    int[] target = new int[block.length];
+    for (int from = 0; from < mapped.length; from += BLOCK) {
+      int length = Math.min(BLOCK, mapped.length - from);
+      if (length < block.length) {
+        block = new int[length];
+        target = new int[length];
+      }
+      readRun(from, block, 0, length);
+      kernel.accept(block, target);
+      System.arraycopy(target, 0, mapped, from, length);
+    }
+    return mapped;
+  }
+
+  /**
+   * Reads one channel of a run of pixels within a row, without converting the layout of this
+   * image: planes are read as they are, and off-heap pixels straight from their buffer.
+   *
+   * @param channel 0 for red, 1 for green, 2 for blue and 3 for alpha.
+   * @param x       the column of the first pixel.
+   * @param y       the row of the pixels.
+   * @param length  the number of pixels.
+   * @param target  receives the values of the channel, between 0 and 255.
+   * @param at      the index of the first value in the target.
+   */
+  void readChannel(int channel, int x, int y, int length, int[] target, int at) {
+    int from = y * width + x;
+    PlanarImage planar = this.planar;
+    if (planar != null) {
+      byte[] plane = planar.plane(channel);
+      for (int i = 0; i < length; i++) {
+        target[at + i] = plane[from + i] & 0xFF;
+      }
+      return;
+    }
+    if (pixels != null || !isOffHeap()) {
+      int[] pixels = interleaved();
+      for (int i = 0; i < length; i++) {
+        target[at + i] = channel(pixels[from + i], channel);
+      }
+      return;
+    }
+    readRun(from, target, at, length);
+    for (int i = at; i < at + length; i++) {
+      target[i] = channel(target[i], channel);
+    }
+  }
+
+  /**
+   * Gets one channel of this image as a plane. The plane of a planar image is returned as it is,
+   * and must not be modified; other images read it a block of pixels at a time into a new one.
+   *
+   * @param channel 0 for red, 1 for green, 2 for blue and 3 for alpha.
+   * @return the values of the channel in row-major order.
+   */
+  byte[] channelPlane(int channel) {
+    PlanarImage planar = this.planar;
+    if (planar != null) {
+      return planar.plane(channel);
+    }
+    byte[] plane = new byte[width * height];
+    readPixels((run, from) -> {
+      for (int i = 0; i < run.length; i++) {
+        plane[from + i] = (byte) channel(run[i], channel);
+      }
+    });
+    return plane;
+  }
+
+  private void readRun(int from, int[] run, int at, int length) {
+    IntBuffer direct = this.direct;
+    if (direct != null) {
+      direct.get(from, run, at, length);
+      return;
+    }
+    for (int i = 0; i < length; i++) {
+      run[at + i] = getArgb((from + i) % width, (from + i) / width);
+    }
+  }
+
+  /**
+   * Checks whether the pixels of this image are read from an off-heap buffer, either its own or
+   * the one of the image it is a view of.
+   */
+  private boolean isOffHeap() {
+    IntBuffer base = this.base;
+    return direct != null || (base != null && base.isDirect());
+  }
+
+  private int[] interleaved() {
+    int[] pixels = this.pixels;
+    if (pixels != null) {
+      return pixels;
+    }
+    return isOffHeap() ? readPixels() : convertToInterleaved();
+  }
+
+  private synchronized int[] convertToInterleaved() {
+    // The current layout is kept, so a thread reading it meanwhile never finds the image empty
+    if (pixels == null) {
+      if (base != null) {
+        pixels = materialize();
+      } else {
+        pixels = planar.toInterleaved();
+      }
+      conversions++;
+    }
+    return pixels;
+  }
+
+  private int[] materialize() {
+    int[] materialized = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      int index = offset + y * strideY;
+      for (int x = 0; x < width; x++) {
+        materialized[y * width + x] = base.get(index) & mask;
+        index += strideX;
+      }
+    }
+    return materialized;
+  }
+
+  /**
+   * Creates a copy of this image whose interleaved pixels live in a new off-heap buffer.
+   *
+   * @return the off-heap image.
+   */
+  Image toDirect() {
+    DirectPixelBuffer buffer = new DirectPixelBuffer(width * height);
+    IntBuffer target = buffer.pixels();
+    if (pixels != null) {
+      target.put(0, pixels);
+    } else {
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          target.put(y * width + x, getArgb(x, y));
+        }
+      }
+    }
+    Image image = new Image(width, height, null, null);
+    image.direct = target;
+    image.directBuffer = buffer;
+    return image;
+  }
+
+  /**
+   * Gets the off-heap buffer this image reads its pixels from, if any.
+   *
+   * @return the off-heap buffer, or null if the pixels are on the heap.
+   */
+  DirectPixelBuffer directBuffer() {
+    return directBuffer;
+  }
+
+  private int[] writablePixels() {
+    if (shared && pixels != null) {
+      // Another image may still read these pixels, so take a private copy first
+      pixels = pixels.clone();
+    }
+    // Pixels converted from planes or materialized from a view are always private
+    shared = false;
+    histograms = null;
+    int[] writable = interleaved();
+    // Off-heap pixels were copied, and the copy becomes the pixels of this image
+    pixels = writable;
+    if (planar != null || direct != null || base != null) {
+      // The other layouts no longer match the pixels once they are modified
+      planar = null;
+      direct = null;
+      directBuffer = null;
+      base = null;
+    }
+    return writable;
+  }
+
+  /**
+   * Gets the histograms counted for the current pixels of this image.
+   *
+   * @return the counts, indexed by channel and then value, or null if they were not counted
+   *         since the pixels were last modified. The arrays must not be modified.
+   */
+  int[][] cachedHistograms() {
+    return histograms;
+  }
+
+  /**
+   * Keeps the histograms of the current pixels of this image, until the pixels are modified.
+   *
+   * @param histograms the counts, indexed by channel and then value, which are no longer modified.
+   */
+  void cacheHistograms(int[][] histograms) {
+    this.histograms = histograms;
+  }
+
+  /**
+   * Lists the heap arrays holding the pixels of this image, so that a store can count each of them
+   * once however many images share it. A view lists the whole array it reads from, since it keeps
+   * that array alive.
+   *
+   * @return the int and byte arrays.
+   */
+  List<Object> heapArrays() {
+    List<Object> arrays = new ArrayList<>();
+    int[] pixels = this.pixels;
+    if (pixels != null) {
+      arrays.add(pixels);
+    }
+    IntBuffer base = this.base;
+    if (base != null && base.hasArray()) {
+      arrays.add(base.array());
+    }
+    PlanarImage planar = this.planar;
+    if (planar != null) {
+      for (int c = 0; c < 4; c++) {
+        arrays.add(planar.plane(c));
+      }
+    }
+    return arrays;
+  }
+
+  /**
+   * Gets the number of layouts this image converted its pixels to and kept, which changes
+   * whenever {@link #heapArrays()} gains an array.
+   *
+   * @return the number of conversions.
+   */
+  int conversions() {
+    return conversions;
+  }
+
+  /**
+   * Gets the number of bytes of an array listed by {@link #heapArrays()}.
+   *
+   * @param array an int or byte array.
+   * @return the number of bytes.
+   */
+  static long arrayBytes(Object array) {
+    return array instanceof int[] ? 4L * ((int[]) array).length : ((byte[]) array).length;
+  }
+
+  /**
+   * Creates a view of this image mirrored left to right.
+   *
+   * @return a view over the pixels of this image.
+   */
+  public Image horizontalFlipView() {
+    return view(width - 1, 0, width, height, -1, 1, -1);
+  }
+
+  /**
+   * Creates a view of this image mirrored top to bottom.
+   *
+   * @return a view over the pixels of this image.
+   */
+  public Image verticalFlipView() {
+    return view(0, height - 1, width, height, 1, -1, -1);
+  }
+
+  /**
+   * Creates a view of a rectangular window of this image.
+   *
+   * @param x      the column of the top-left corner of the window.
+   * @param y      the row of the top-left corner of the window.
+   * @param width  the number of columns of the window.
+   * @param height the number of rows of the window.
+   * @return a view over the pixels of this image.
+   */
+  public Image cropView(int x, int y, int width, int height) {
+    if (x < 0 || y < 0 || width < 0 || height < 0
+        || x + width > this.width || y + height > this.height) {
+      throw new IllegalArgumentException("The window does not fit in the image!");
+    }
+    return view(x, y, width, height, 1, 1, -1);
+  }
+
+  /**
+   * Creates a view of this image in which only the channels selected by a mask are kept and the
+   * others read as zero.
+   *
+   * @param channelMask the ARGB bits to keep.
+   * @return a view over the pixels of this image.
+   */
+  public Image channelView(int channelMask) {
+    return view(0, 0, width, height, 1, 1, channelMask);
+  }
+
+  private Image view(int originX, int originY, int viewWidth, int viewHeight, int directionX,
+      int directionY, int channelMask) {
+    Image view = new Image(viewWidth, viewHeight, null, null);
+    view.directBuffer = directBuffer;
+    if (viewWidth == width && viewHeight == height && channelMask == -1) {
+      // A flip moves the pixels around without changing them, so they count the same
+      view.histograms = histograms;
+    }
+    if (base != null) {
+      // Combine with the transform of this view, so the new view reads the original pixels
+      view.base = base;
+      view.offset = offset + originY * strideY + originX * strideX;
+      view.strideX = strideX * directionX;
+      view.strideY = strideY * directionY;
+      view.mask = mask & channelMask;
+    } else {
+      view.base = direct != null ? direct : IntBuffer.wrap(interleaved());
+      view.offset = originY * width + originX;
+      view.strideX = directionX;
+      view.strideY = width * directionY;
+      view.mask = channelMask;
+      // The view reads these pixels, so this image must copy them before its next modification
+      shared = true;
+    }
+    return view;
+  }
+
+  /**
+   * Creates an image that shares the pixels of this image. Neither image sees modifications
+   * made to the other, since the pixels are copied before the first modification of either.
+   *
+   * @return a new image with the same pixels.
+   */
+  public Image share() {
+    Image image = new Image(width, height, planar, pixels);
+    image.direct = direct;
+    image.directBuffer = directBuffer;
+    image.base = base;
+    image.offset = offset;
+    image.strideX = strideX;
+    image.strideY = strideY;
+    image.mask = mask;
+    image.histograms = histograms;
+    shared = true;
+    image.shared = true;
+    return image;
+  }
+
+  private Image(int width, int height, PlanarImage planar, int[] pixels) {
+    this.width = width;
+    this.height = height;
+    this.planar = planar;
+    this.pixels = pixels;
+  }
+
+  /**
+   * Creates an independent copy of this image.
+   *
+   * @return a new image with the same pixels.
+   */
+  public Image copy() {
+    if (pixels != null) {
+      return new Image(width, height, pixels.clone());
+    }
+    if (direct != null) {
+      return new Image(width, height, readPixels());
+    }
+    if (base != null) {
+      return new Image(width, height, materialize());
+    }
+    // Planes are never modified, so the copy can share them
+    return new Image(planar);
+  }
+
+  /**
+   * Packs the four channels of a pixel into one ARGB int.
+   *
+   * @param alpha the alpha channel, between 0 and 255.
+   * @param red   the red channel, between 0 and 255.
+   * @param green the green channel, between 0 and 255.
+   * @param blue  the blue channel, between 0 and 255.
+   * @return the packed ARGB value.
+   */
+  public static int argb(int alpha, int red, int green, int blue) {
+    return (alpha << 24) | (red << 16) | (green << 8) | blue;
+  }
+
+  public static int alpha(int argb) {
+    return (argb >>> 24) & 0xFF;
+  }
+
+  public static int red(int argb) {
+    return (argb >> 16) & 0xFF;
+  }
+
+  public static int green(int argb) {
+    return (argb >> 8) & 0xFF;
+  }
+
+  public static int blue(int argb) {
+    return argb & 0xFF;
+  }
+
+  /**
+   * Gets one channel of a packed pixel, in the order red, green, blue, alpha used by the
+   * three-dimensional RGBA lists.
+   *
+   * @param argb    the packed ARGB value.
+   * @param channel 0 for red, 1 for green, 2 for blue and 3 for alpha.
+   * @return the value of the channel.
+   */
+  public static int channel(int argb, int channel) {
+    return channel == 3 ? alpha(argb) : (argb >> (16 - 8 * channel)) & 0xFF;
+  }
+
+  /**
+   * Creates an image from a three-dimensional RGBA list indexed by column, row and channel.
+   *
+   * @param rgbaArray the pixels of the image.
+   * @return the packed image.
+   */
+  public static Image fromRgbaArray(ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray) {
+    if (rgbaArray.isEmpty()) {
+      return new Image(0, 0);
+    }
+    if (rgbaArray.get(0).isEmpty() || rgbaArray.get(0).get(0).size() != 4) {
+      throw new IllegalArgumentException("Illegal array dimensions!");
+    }
+    int width = rgbaArray.size();
+    int height = rgbaArray.get(0).size();
+    Image image = new Image(width, height);
+    for (int x = 0; x < width; x++) {
+      ArrayList<ArrayList<Integer>> column = rgbaArray.get(x);
+      for (int y = 0; y < height; y++) {
+        ArrayList<Integer> pixel = column.get(y);
+        image.setArgb(x, y, argb(pixel.get(3), pixel.get(0), pixel.get(1), pixel.get(2)));
+      }
+    }
+    return image;
+  }
+
+  /**
+   * Converts this image to a three-dimensional RGBA list indexed by column, row and channel.
+   *
+   * @return a new list holding the pixels of the image.
+   */
+  public ArrayList<ArrayList<ArrayList<Integer>>> toRgbaArray() {
+    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = new ArrayList<>(width);
+    for (int x = 0; x < width; x++) {
+      ArrayList<ArrayList<Integer>> column = new ArrayList<>(height);
+      for (int y = 0; y < height; y++) {
+        int argb = getArgb(x, y);
+        ArrayList<Integer> pixel = new ArrayList<>(4);
+        pixel.add(red(argb));
+        pixel.add(green(argb));
+        pixel.add(blue(argb));
+        pixel.add(alpha(argb));
+        column.add(pixel);
+      }
+      rgbaArray.add(column);
+    }
+    return rgbaArray;
+  }
+
+  /**
+   * Creates an image from a buffered image. Images without an alpha channel become opaque.
+   *
+   * @param image the buffered image.
+   * @return the packed image.
+   */
+  public static Image fromBufferedImage(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+    if (!image.getColorModel().hasAlpha()) {
+      for (int i = 0; i < pixels.length; i++) {
+        pixels[i] |= 0xFF000000;
+      }
+    }
+    return new Image(width, height, pixels);
+  }
+
+  /**
+   * Converts this image to a buffered image.
+   *
+   * @param withAlpha whether the buffered image keeps the alpha channel.
+   * @return a new buffered image holding the pixels of the image.
+   */
+  public BufferedImage toBufferedImage(boolean withAlpha) {
+    BufferedImage image = new BufferedImage(width, height,
+        withAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    image.setRGB(0, 0, width, height, interleaved(), 0, width);
+    return image;
+  }
+}
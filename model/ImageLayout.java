@@ -0,0 +1,16 @@
+package model;
+
+/**
+ * Enumeration representing the ways the pixels of an image can be laid out in memory.
+ */
+public enum ImageLayout {
+  /**
+   * One packed ARGB int per pixel. Suited to operations that combine the channels of a pixel.
+   */
+  INTERLEAVED,
+
+  /**
+   * One contiguous plane per channel. Suited to operations that work on a single channel.
+   */
+  PLANAR
+}
@@ -0,0 +1,377 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The `ImageStore` class holds the named images of a model within a heap budget. When the images
+ * held in memory exceed the budget, the least recently used ones are spilled to memory-mapped
+ * files and dropped from the heap. A spilled image is read back transparently the next time it is
+ * retrieved, and its spill file is deleted then.
+ *
+ * <p>Images that share their pixels, such as shared copies and views, are counted once per
+ * underlying array rather than once per image, and dropping one of them from the heap frees only
+ * the arrays no other image held in memory still reads.
+ *
+ * <p>A store can also keep its images off the heap. Each stored image is then moved into a direct
+ * buffer, which is freed as soon as no stored image reads from it any more, and spilling is not
+ * needed.
+ *
+ * <p>The store is safe to use from several threads.
+ */
+public class ImageStore {
+
+  private final long heapBudget;
+  private final boolean offHeap;
+  private final LinkedHashMap<String, Entry> entries;
+  // The number of images held in memory that hold each heap array
+  private final IdentityHashMap<Object, Integer> references;
+  private Path spillDirectory;
+  private long heapBytes;
+  private long evictionCount;
+  private long spillCount;
+  private long faultCount;
+
+  /**
+   * Constructs a store whose budget is half of the maximum heap size.
+   */
+  public ImageStore() {
+    this(Runtime.getRuntime().maxMemory() / 2);
+  }
+
+  /**
+   * Constructs a store with the given heap budget.
+   *
+   * @param heapBudget the number of bytes of pixel data the store may keep on the heap.
+   */
+  public ImageStore(long heapBudget) {
+    this(heapBudget, false);
+  }
+
+  /**
+   * Constructs a store with the given heap budget, optionally keeping the pixels of its images
+   * off the heap.
+   *
+   * @param heapBudget the number of bytes of pixel data the store may keep on the heap.
+   * @param offHeap    whether the pixels of stored images are moved off the heap.
+   */
+  public ImageStore(long heapBudget, boolean offHeap) {
+    if (heapBudget < 0) {
+      throw new IllegalArgumentException("The heap budget cannot be negative.");
+    }
+    this.heapBudget = heapBudget;
+    this.offHeap = offHeap;
+    // Iterating in access order visits the least recently used image first
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    this.references = new IdentityHashMap<>();
+  }
+
+  /**
+   * Retrieves the image stored under the given name, reading it back from disk if it was spilled.
+   *
+   * @param name the name of the image.
+   * @return the image, or null if no image is stored under the name.
+   */
+  public synchronized Image get(String name) {
+    Entry entry = entries.get(name);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.image == null) {
+      entry.image = readSpill(entry);
+      // The image is written again if it is evicted again, so the file is not kept meanwhile
+      deleteSpill(entry);
+      retain(entry);
+      faultCount++;
+      evict(name);
+    } else if (refresh(entry)) {
+      evict(name);
+    }
+    return entry.image;
+  }
+
+  /**
+   * Retrieves the image stored under the given name with its pixels available in a layout, and
+   * counts the arrays a conversion to that layout added to it. The conversion runs outside the
+   * lock of the store, so other images can be retrieved meanwhile.
+   *
+   * @param name   the name of the image.
+   * @param layout the layout the pixels should be available in.
+   * @return the image, or null if no image is stored under the name.
+   */
+  public Image get(String name, ImageLayout layout) {
+    Image image = get(name);
+    if (image == null || image.hasLayout(layout)) {
+      return image;
+    }
+    image.prepare(layout);
+    synchronized (this) {
+      Entry entry = entries.get(name);
+      // The entry may have been replaced or evicted while the image was converted
+      if (entry != null && entry.image == image && refresh(entry)) {
+        evict(name);
+      }
+    }
+    return image;
+  }
+
+  /**
+   * Stores an image under the given name, replacing any image already stored under it.
+   *
+   * @param name  the name of the image.
+   * @param image the image to be stored.
+   */
+  public synchronized void put(String name, Image image) {
+    if (offHeap && image.directBuffer() == null) {
+      image = image.toDirect();
+    }
+    Entry entry = new Entry(image);
+    if (entry.directBuffer != null) {
+      // Retain before removing, so an image stored over its own source keeps its buffer
+      entry.directBuffer.retain();
+    }
+    remove(name);
+    entries.put(name, entry);
+    retain(entry);
+    evict(name);
+  }
+
+  /**
+   * Checks whether an image is stored under the given name, without reading it back from disk.
+   *
+   * @param name the name of the image.
+   * @return true if an image is stored under the name.
+   */
+  public synchronized boolean containsKey(String name) {
+    return entries.containsKey(name);
+  }
+
+  /**
+   * Removes the image stored under the given name and deletes its spill file, if any.
+   *
+   * @param name the name of the image.
+   */
+  public synchronized void remove(String name) {
+    Entry entry = entries.remove(name);
+    if (entry == null) {
+      return;
+    }
+    release(entry);
+    if (entry.directBuffer != null) {
+      entry.directBuffer.release();
+    }
+    deleteSpill(entry);
+  }
+
+  public long getHeapBudget() {
+    return heapBudget;
+  }
+
+  public boolean isOffHeap() {
+    return offHeap;
+  }
+
+  /**
+   * Gets the number of bytes of pixel data currently held on the heap, counting each array once
+   * however many images share it.
+   *
+   * @return the number of bytes.
+   */
+  public synchronized long getHeapBytes() {
+    return heapBytes;
+  }
+
+  /**
+   * Gets the number of times an image was dropped from the heap to stay within the budget.
+   *
+   * @return the number of evictions.
+   */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * Gets the number of times an image was written to a spill file.
+   *
+   * @return the number of spills.
+   */
+  public synchronized long getSpillCount() {
+    return spillCount;
+  }
+
+  /**
+   * Gets the number of times a spilled image was read back from its spill file.
+   *
+   * @return the number of faults.
+   */
+  public synchronized long getFaultCount() {
+    return faultCount;
+  }
+
+  private void evict(String keep) {
+    Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+    while (heapBytes > heapBudget && iterator.hasNext()) {
+      Map.Entry<String, Entry> candidate = iterator.next();
+      Entry entry = candidate.getValue();
+      // The image just stored or retrieved is about to be used, so it is never evicted, and
+      // off-heap images do not count against the budget
+      if (entry.image == null || entry.directBuffer != null || candidate.getKey().equals(keep)) {
+        continue;
+      }
+      if (entry.spillFile == null) {
+        try {
+          writeSpill(entry);
+        } catch (IOException e) {
+          // Keep the image on the heap rather than lose it
+          return;
+        }
+      }
+      // Only the arrays no other image in memory still holds are freed
+      release(entry);
+      entry.image = null;
+      evictionCount++;
+    }
+  }
+
+  /**
+   * Counts the heap arrays of an image held in memory, adding the bytes of those no other image
+   * held yet.
+   */
+  private void retain(Entry entry) {
+    entry.conversions = entry.image.conversions();
+    entry.arrays = entry.image.heapArrays();
+    for (Object array : entry.arrays) {
+      if (references.merge(array, 1, Integer::sum) == 1) {
+        heapBytes += Image.arrayBytes(array);
+      }
+    }
+  }
+
+  /**
+   * Stops counting the heap arrays of an image, subtracting the bytes of those no other image in
+   * memory holds any more.
+   */
+  private void release(Entry entry) {
+    for (Object array : entry.arrays) {
+      int count = references.get(array) - 1;
+      if (count == 0) {
+        references.remove(array);
+        heapBytes -= Image.arrayBytes(array);
+      } else {
+        references.put(array, count);
+      }
+    }
+    entry.arrays = Collections.emptyList();
+  }
+
+  /**
+   * Counts the arrays of an image held in memory again if it was converted to another layout
+   * since they were counted.
+   *
+   * @return whether the image was counted again.
+   */
+  private boolean refresh(Entry entry) {
+    if (entry.image == null || entry.image.conversions() == entry.conversions) {
+      return false;
+    }
+    release(entry);
+    retain(entry);
+    return true;
+  }
+
+  private void writeSpill(Entry entry) throws IOException {
+    if (spillDirectory == null) {
+      spillDirectory = Files.createTempDirectory("ime-spill");
+      Path directory = spillDirectory;
+      // One hook clears the whole directory, rather than one exit entry per spill file
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteDirectory(directory)));
+    }
+    Path file = Files.createTempFile(spillDirectory, "image", ".argb");
+    Image image = entry.image;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0,
+          4L * image.getWidth() * image.getHeight());
+      IntBuffer pixels = buffer.asIntBuffer();
+      for (int y = 0; y < image.getHeight(); y++) {
+        for (int x = 0; x < image.getWidth(); x++) {
+          pixels.put(image.getArgb(x, y));
+        }
+      }
+      buffer.force();
+    } catch (IOException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+    // Stored images are never modified, so the file stays valid until the entry is replaced
+    entry.spillFile = file;
+    spillCount++;
+  }
+
+  private Image readSpill(Entry entry) {
+    int[] pixels = new int[entry.width * entry.height];
+    try (FileChannel channel = FileChannel.open(entry.spillFile, StandardOpenOption.READ)) {
+      channel.map(MapMode.READ_ONLY, 0, 4L * pixels.length).asIntBuffer().get(pixels);
+    } catch (IOException e) {
+      throw new UncheckedIOException("The spilled image could not be read back.", e);
+    }
+    return new Image(entry.width, entry.height, pixels);
+  }
+
+  private void deleteSpill(Entry entry) {
+    if (entry.spillFile == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(entry.spillFile);
+    } catch (IOException ignored) {
+      // The file is deleted on exit instead
+    }
+    entry.spillFile = null;
+  }
+
+  private static void deleteDirectory(Path directory) {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.deleteIfExists(file);
+      }
+      Files.deleteIfExists(directory);
+    } catch (IOException ignored) {
+      // Left to the temporary directory of the system
+    }
+  }
+
+  private static class Entry {
+
+    private final int width;
+    private final int height;
+    // The heap arrays counted for the image while it is held in memory
+    private List<Object> arrays = Collections.emptyList();
+    // The number of conversions of the image when its arrays were counted
+    private int conversions;
+    private Image image;
+    private Path spillFile;
+    private final DirectPixelBuffer directBuffer;
+
+    private Entry(Image image) {
+      this.width = image.getWidth();
+      this.height = image.getHeight();
+      this.image = image;
+      this.directBuffer = image.directBuffer();
+    }
+  }
+}
@@ -0,0 +1,280 @@
+package model;
+
+/**
+ * The `Kernel` class represents a square convolution kernel of odd size. The weight at position
+ * (i, j) applies to the pixel i - size / 2 columns and j - size / 2 rows away from the pixel being
+ * filtered.
+ *
+ * <p>A kernel whose weights are the product of one weight per column and one weight per row is
+ * separable. Such a kernel is applied as a horizontal pass followed by a vertical pass, which costs
+ * 2k instead of k * k multiply-adds per pixel for a kernel of size k.
+ *
+ * <p>A kernel whose weights are all dyadic fractions, such as 1/16 or 3/8, is also compiled to
+ * integer weights and a shift. Pixels are then accumulated in integer arithmetic, which gives
+ * exactly the same result as accumulating them as doubles.
+ */
+public class Kernel {
+
+  private static final double SEPARABILITY_TOLERANCE = 1e-12;
+  private static final int MAX_SHIFT = 24;
+
+  private final double[][] weights;
+  private final double[] xWeights;
+  private final double[] yWeights;
+  private final Dyadic dyadic;
+  private final Dyadic xDyadic;
+  private final Dyadic yDyadic;
+
+  /**
+   * Constructs a kernel from its weights.
+   *
+   * @param weights the weights, indexed by column offset and then row offset.
+   */
+  public Kernel(double[][] weights) {
+    if (weights == null || weights.length % 2 == 0) {
+      throw new IllegalArgumentException("The kernel must have an odd size!");
+    }
+    this.weights = new double[weights.length][];
+    for (int i = 0; i < weights.length; i++) {
+      if (weights[i].length != weights.length) {
+        throw new IllegalArgumentException("The kernel must be square!");
+      }
+      for (double weight : weights[i]) {
+        if (!Double.isFinite(weight)) {
+          throw new IllegalArgumentException("The weights of a kernel must be finite!");
+        }
+      }
+      this.weights[i] = weights[i].clone();
+    }
+    double[][] factors = factorize(this.weights);
+    this.xWeights = factors == null ? null : factors[0];
+    this.yWeights = factors == null ? null : factors[1];
+    double[] flattened = new double[weights.length * weights.length];
+    for (int i = 0; i < weights.length; i++) {
+      System.arraycopy(this.weights[i], 0, flattened, i * weights.length, weights.length);
+    }
+    this.dyadic = Dyadic.of(flattened, 255);
+    this.xDyadic = xWeights == null ? null : Dyadic.of(xWeights, 255);
+    this.yDyadic = xDyadic == null ? null : Dyadic.of(yWeights, 255 * xDyadic.magnitude);
+  }
+
+  private Kernel(double[] xWeights, double[] yWeights) {
+    this.weights = new double[xWeights.length][yWeights.length];
+    for (int i = 0; i < xWeights.length; i++) {
+      for (int j = 0; j < yWeights.length; j++) {
+        weights[i][j] = xWeights[i] * yWeights[j];
+      }
+    }
+    this.xWeights = xWeights;
+    this.yWeights = yWeights;
+    this.dyadic = null;
+    this.xDyadic = null;
+    this.yDyadic = null;
+  }
+
+  /**
+   * Creates a normalized Gaussian kernel. The kernel extends three standard deviations from its
+   * center, which holds all but a negligible part of the weight.
+   *
+   * @param sigma the standard deviation of the Gaussian, in pixels.
+   * @return the Gaussian kernel.
+   */
+  public static Kernel gaussian(double sigma) {
+    if (!(sigma > 0)) {
+      throw new IllegalArgumentException("The standard deviation must be positive!");
+    }
+    int radius = (int) Math.ceil(3 * sigma);
+    double[] weights = new double[2 * radius + 1];
+    double sum = 0;
+    for (int i = -radius; i <= radius; i++) {
+      weights[i + radius] = Math.exp(-(i * i) / (2 * sigma * sigma));
+      sum += weights[i + radius];
+    }
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] /= sum;
+    }
+    return new Kernel(weights, weights.clone());
+  }
+
+  public int size() {
+    return weights.length;
+  }
+
+  /**
+   * Gets the weight at the given position of the kernel.
+   *
+   * @param i the column of the weight.
+   * @param j the row of the weight.
+   * @return the weight.
+   */
+  public double get(int i, int j) {
+    return weights[i][j];
+  }
+
+  /**
+   * Checks whether the kernel can be applied as a horizontal pass followed by a vertical pass.
+   *
+   * @return true if the kernel is separable.
+   */
+  public boolean isSeparable() {
+    return xWeights != null;
+  }
+
+  /**
+   * Gets the number of weights each pixel is computed from: the side twice over for a separable
+   * kernel, which is applied in two passes, and the side squared otherwise.
+   *
+   * @return the number of taps.
+   */
+  public int taps() {
+    return isSeparable() ? 2 * size() : size() * size();
+  }
+
+  /**
+   * Gets the weights of the horizontal pass of a separable kernel. The returned array must not be
+   * modified.
+   *
+   * @return the weight of each column offset.
+   */
+  double[] xWeights() {
+    return xWeights;
+  }
+
+  /**
+   * Gets the weights of the vertical pass of a separable kernel. The returned array must not be
+   * modified.
+   *
+   * @return the weight of each row offset.
+   */
+  double[] yWeights() {
+    return yWeights;
+  }
+
+  double[][] weights() {
+    return weights;
+  }
+
+  /**
+   * Gets the integer form of the weights, flattened by column and then row, if they are all
+   * dyadic.
+   *
+   * @return the integer weights, or null if the kernel needs floating-point arithmetic.
+   */
+  Dyadic dyadic() {
+    return dyadic;
+  }
+
+  /**
+   * Gets the integer forms of the horizontal and vertical weights of a separable kernel, if they
+   * are all dyadic.
+   *
+   * @return the integer weights of both passes, or null if either needs floating-point arithmetic.
+   */
+  Dyadic[] separableDyadic() {
+    return yDyadic == null ? null : new Dyadic[]{xDyadic, yDyadic};
+  }
+
+  /**
+   * Splits the weights into a column vector and a row vector whose product gives them back, if
+   * the weights have rank one.
+   *
+   * @param weights the weights of the kernel.
+   * @return the column and row weights, or null if the kernel is not separable.
+   */
+  private static double[][] factorize(double[][] weights) {
+    int size = weights.length;
+    // Take the row with the largest weight, and divide it by its smallest nonzero weight. For
+    // kernels like the binomial ones this keeps both factors integer multiples of a power of two.
+    int pivotI = 0;
+    double largest = 0;
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        if (Math.abs(weights[i][j]) > largest) {
+          largest = Math.abs(weights[i][j]);
+          pivotI = i;
+        }
+      }
+    }
+    int pivotJ = -1;
+    for (int j = 0; j < size; j++) {
+      double weight = Math.abs(weights[pivotI][j]);
+      if (weight != 0 && (pivotJ < 0 || weight < Math.abs(weights[pivotI][pivotJ]))) {
+        pivotJ = j;
+      }
+    }
+    if (pivotJ < 0) {
+      return null;
+    }
+    double pivot = weights[pivotI][pivotJ];
+    if (!Double.isFinite(largest)) {
+      return null;
+    }
+    double[] xWeights = new double[size];
+    double[] yWeights = new double[size];
+    for (int k = 0; k < size; k++) {
+      xWeights[k] = weights[k][pivotJ];
+      yWeights[k] = weights[pivotI][k] / pivot;
+    }
+    double tolerance = SEPARABILITY_TOLERANCE * largest;
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        if (Math.abs(weights[i][j] - xWeights[i] * yWeights[j]) > tolerance) {
+          return null;
+        }
+      }
+    }
+    return new double[][]{xWeights, yWeights};
+  }
+
+  /**
+   * Integer weights that, shifted right by a common amount, equal the weights of a kernel exactly.
+   */
+  static final class Dyadic {
+
+    final int[] weights;
+    final int shift;
+    private final long magnitude;
+
+    private Dyadic(int[] weights, int shift, long magnitude) {
+      this.weights = weights;
+      this.shift = shift;
+      this.magnitude = magnitude;
+    }
+
+    /**
+     * Converts weights to integers over a common power of two, if that is exact and the sums of
+     * weighted inputs up to the given bound cannot overflow.
+     *
+     * @param weights  the weights.
+     * @param maxInput the largest value the weights are applied to.
+     * @return the integer weights, or null if the weights are not all dyadic.
+     */
+    private static Dyadic of(double[] weights, long maxInput) {
+      int shift = 0;
+      for (double weight : weights) {
+        while (shift <= MAX_SHIFT && Math.scalb(weight, shift) != Math.rint(Math.scalb(weight,
+            shift))) {
+          shift++;
+        }
+        if (shift > MAX_SHIFT) {
+          return null;
+        }
+      }
+      int[] integers = new int[weights.length];
+      long magnitude = 0;
+      for (int i = 0; i < weights.length; i++) {
+        double scaled = Math.scalb(weights[i], shift);
+        if (Math.abs(scaled) > Integer.MAX_VALUE) {
+          return null;
+        }
+        integers[i] = (int) scaled;
+        magnitude += Math.abs((long) integers[i]);
+      }
+      // Every partial sum must fit in an int, whatever the order of the terms
+      if (magnitude * maxInput > Integer.MAX_VALUE) {
+        return null;
+      }
+      return new Dyadic(integers, shift, magnitude);
+    }
+  }
+}
@@ -0,0 +1,511 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * The `LazyModel` class defers the operations of a model until their results are needed. An
+ * operation does not run when it is called: it adds a node to a graph, whose inputs are the nodes
+ * that produced its sources at that time, and binds the names of its destinations to the new node.
+ * Only retrieving an image, by {@link #getImage(String)}, {@link #getRgbaArray(String)} or
+ * {@link #getHistograms(String)}, runs the nodes it depends on, so operations whose results are
+ * overwritten before anything reads them are never computed.
+ *
+ * <p>Since the whole graph is known when an image is needed, a run of per-pixel operations
+ * between a computed image and the one needed is applied as a single {@link PointChain}, even if
+ * the images between them are still named; should one of them be needed later, it is computed
+ * from the same input then. Each result is stored in the underlying model under a key of its own,
+ * and is removed as soon as no name refers to it and no pending node reads it.
+ *
+ * <p>A missing source or an invalid parameter is reported by the operation as it is called, as
+ * the model would. Only the errors that depend on the pixels, such as images of different sizes
+ * or a region that does not fit in its image, are reported when the result is computed. The
+ * methods are synchronized, so the model may be shared between threads.
+ */
+public class LazyModel implements IModel {
+
+  private final IModel model;
+  private final Map<String, Value> names;
+  private long serial;
+
+  /**
+   * Constructs a lazy model over a new model.
+   */
+  public LazyModel() {
+    this(new Model());
+  }
+
+  /**
+   * Constructs a lazy model over the given model, which must not be used directly afterwards.
+   *
+   * @param model the model that computes the deferred operations.
+   */
+  public LazyModel(IModel model) {
+    if (model == null) {
+      throw new IllegalArgumentException("The model cannot be null.");
+    }
+    this.model = model;
+    this.names = new HashMap<>();
+  }
+
+  @Override
+  public void brighten(float factor, String src, String dest) {
+    defer(names(src), names(dest), chain -> chain.then(PointOperation.brighten(factor)),
+        (m, s, d) -> m.brighten(factor, s[0], d[0]));
+  }
+
+  @Override
+  public void verticalFlip(String src, String dest) {
+    defer(names(src), names(dest), null, (m, s, d) -> m.verticalFlip(s[0], d[0]));
+  }
+
+  @Override
+  public void horizontalFlip(String src, String dest) {
+    defer(names(src), names(dest), null, (m, s, d) -> m.horizontalFlip(s[0], d[0]));
+  }
+
+  @Override
+  public void sepia(String src, String dest) {
+    defer(names(src), names(dest), chain -> chain.then(ColorMatrix.SEPIA),
+        (m, s, d) -> m.sepia(s[0], d[0]));
+  }
+
+  @Override
+  public void blur(String src, String dest) {
+    defer(names(src), names(dest), null, (m, s, d) -> m.blur(s[0], d[0]));
+  }
+
+  @Override
+  public void blur(String src, String dest, Region region) {
+    defer(names(src), names(dest), null, (m, s, d) -> m.blur(s[0], d[0], region));
+  }
+
+  @Override
+  public void sharpen(String src, String dest) {
+    defer(names(src), names(dest), null, (m, s, d) -> m.sharpen(s[0], d[0]));
+  }
+
+  @Override
+  public void sharpen(String src, String dest, Region region) {
+    defer(names(src), names(dest), null, (m, s, d) -> m.sharpen(s[0], d[0], region));
+  }
+
+  @Override
+  public void blurRadius(double sigma, String src, String dest) {
+    // Rejects a standard deviation that is not positive
+    BoxBlur.radii(sigma);
+    defer(names(src), names(dest), null, (m, s, d) -> m.blurRadius(sigma, s[0], d[0]));
+  }
+
+  @Override
+  public void convolve(double[][] kernel, BorderMode border, String src, String dest) {
+    // Rejects weights the model could not compile into a kernel
+    new Kernel(kernel);
+    defer(names(src), names(dest), null, (m, s, d) -> m.convolve(kernel, border, s[0], d[0]));
+  }
+
+  @Override
+  public void convolve(double[][] kernel, BorderMode border, String src, String dest,
+      Region region) {
+    // Rejects weights the model could not compile into a kernel
+    new Kernel(kernel);
+    defer(names(src), names(dest), null,
+        (m, s, d) -> m.convolve(kernel, border, s[0], d[0], region));
+  }
+
+  @Override
+  public void colorMatrix(ColorMatrix matrix, String src, String dest) {
+    defer(names(src), names(dest), chain -> chain.then(matrix),
+        (m, s, d) -> m.colorMatrix(matrix, s[0], d[0]));
+  }
+
+  @Override
+  public void pointOperation(PointOperation operation, String src, String dest) {
+    defer(names(src), names(dest), chain -> chain.then(operation),
+        (m, s, d) -> m.pointOperation(operation, s[0], d[0]));
+  }
+
+  @Override
+  public void applyChain(PointChain chain, String src, String dest) {
+    defer(names(src), names(dest), previous -> previous.then(chain),
+        (m, s, d) -> m.applyChain(chain, s[0], d[0]));
+  }
+
+  @Override
+  public void applyChain(PointChain chain, String src, String dest, Region region) {
+    defer(names(src), names(dest), null, (m, s, d) -> m.applyChain(chain, s[0], d[0], region));
+  }
+
+  @Override
+  public void valueComponent(String src, String dest) {
+    defer(names(src), names(dest), null, (m, s, d) -> m.valueComponent(s[0], d[0]));
+  }
+
+  @Override
+  public void valueComponent(String src, String dest, Region region) {
+    defer(names(src), names(dest), null, (m, s, d) -> m.valueComponent(s[0], d[0], region));
+  }
+
+  @Override
+  public void intensityComponent(String src, String dest) {
+    defer(names(src), names(dest), chain -> chain.then(ColorMatrix.INTENSITY),
+        (m, s, d) -> m.intensityComponent(s[0], d[0]));
+  }
+
+  @Override
+  public void lumaComponent(String src, String dest) {
+    defer(names(src), names(dest), chain -> chain.then(ColorMatrix.LUMA),
+        (m, s, d) -> m.lumaComponent(s[0], d[0]));
+  }
+
+  @Override
+  public void redComponent(String src, String dest) {
+    defer(names(src), names(dest), chain -> chain.then(PointOperation.component(0)),
+        (m, s, d) -> m.redComponent(s[0], d[0]));
+  }
+
+  @Override
+  public void greenComponent(String src, String dest) {
+    defer(names(src), names(dest), chain -> chain.then(PointOperation.component(1)),
+        (m, s, d) -> m.greenComponent(s[0], d[0]));
+  }
+
+  @Override
+  public void blueComponent(String src, String dest) {
+    defer(names(src), names(dest), chain -> chain.then(PointOperation.component(2)),
+        (m, s, d) -> m.blueComponent(s[0], d[0]));
+  }
+
+  @Override
+  public void rgbSplit(String src, String[] dest) {
+    defer(names(src), dest.clone(), null, (m, s, d) -> m.rgbSplit(s[0], d));
+  }
+
+  @Override
+  public void components(String src, ColorComponent[] components, String[] dest) {
+    if (components.length != dest.length) {
+      throw new IllegalArgumentException("Each component needs a destination image.");
+    }
+    ColorComponent[] chosen = components.clone();
+    defer(names(src), dest.clone(), null, (m, s, d) -> m.components(s[0], chosen, d));
+  }
+
+  @Override
+  public void rgbCombine(String[] imageArray, String dest) {
+    defer(imageArray.clone(), names(dest), null, (m, s, d) -> m.rgbCombine(s, d[0]));
+  }
+
+  @Override
+  public void chop(float percentage, String src, String dest) {
+    Model.checkChop(percentage);
+    defer(names(src), names(dest), null, (m, s, d) -> m.chop(percentage, s[0], d[0]));
+  }
+
+  @Override
+  public void underlay(String original, String src, String dest) {
+    defer(names(original, src), names(dest), null, (m, s, d) -> m.underlay(s[0], s[1], d[0]));
+  }
+
+  @Override
+  public void histogram(String src, String dest) {
+    defer(names(src), names(dest), null, (m, s, d) -> m.histogram(s[0], d[0]));
+  }
+
+  @Override
+  public void colorCorrect(String src, String dest) {
+    defer(names(src), names(dest), PointChain::thenColorCorrect,
+        (m, s, d) -> m.colorCorrect(s[0], d[0]));
+  }
+
+  @Override
+  public void levelAdjust(int b, int m, int w, String src, String dest) {
+    Model.checkLevels(b, m, w);
+    defer(names(src), names(dest), chain -> chain.then(PointOperation.levels(b, m, w)),
+        (model, s, d) -> model.levelAdjust(b, m, w, s[0], d[0]));
+  }
+
+  @Override
+  public void compress(float percent, String src, String dest) {
+    Model.checkCompression(percent);
+    defer(names(src), names(dest), null, (m, s, d) -> m.compress(percent, s[0], d[0]));
+  }
+
+  @Override
+  public synchronized ArrayList<ArrayList<ArrayList<Integer>>> getRgbaArray(String name) {
+    Value value = names.get(name);
+    if (value == null) {
+      return null;
+    }
+    compute(value);
+    return model.getRgbaArray(value.key);
+  }
+
+  @Override
+  public synchronized Image getImage(String name) {
+    Value value = names.get(name);
+    if (value == null) {
+      return null;
+    }
+    compute(value);
+    return model.getImage(value.key);
+  }
+
+  @Override
+  public synchronized int[][] getHistograms(String name) {
+    Value value = names.get(name);
+    if (value == null) {
+      return null;
+    }
+    compute(value);
+    return model.getHistograms(value.key);
+  }
+
+  @Override
+  public void load(String name, ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray) {
+    load(name, Image.fromRgbaArray(rgbaArray));
+  }
+
+  @Override
+  public synchronized void load(String name, Image image) {
+    Node node = new Node(new Value[0], names(key(name)), null, null);
+    model.load(node.outputs[0].key, image);
+    node.computed = true;
+    bind(name, node.outputs[0]);
+  }
+
+  @Override
+  public synchronized void remove(String name) {
+    Value value = names.remove(name);
+    if (value != null) {
+      release(value);
+    }
+  }
+
+  private static String[] names(String... names) {
+    return names;
+  }
+
+  private String key(String name) {
+    return serial++ + ":" + name;
+  }
+
+  /**
+   * Adds a node for an operation, reading the images currently named by its sources, and binds
+   * the names of its destinations to its results.
+   *
+   * @param sources   the names of the images the operation reads.
+   * @param dests     the names of the images the operation writes.
+   * @param step      appends the operation to a chain, or null if it is not a per-pixel operation.
+   * @param operation runs the operation on the underlying model.
+   * @throws IllegalArgumentException if no image is named by one of the sources.
+   */
+  private synchronized void defer(String[] sources, String[] dests, UnaryOperator<PointChain> step,
+      Operation operation) {
+    Value[] inputs = new Value[sources.length];
+    for (int i = 0; i < sources.length; i++) {
+      inputs[i] = names.get(sources[i]);
+      if (inputs[i] == null) {
+        throw new IllegalArgumentException("The specified image is not found: " + sources[i]);
+      }
+    }
+    String[] keys = new String[dests.length];
+    for (int i = 0; i < dests.length; i++) {
+      keys[i] = key(dests[i]);
+    }
+    Node node = new Node(inputs, keys, step, operation);
+    for (Value input : inputs) {
+      input.references++;
+    }
+    // The sources were resolved first, so a destination may overwrite one of them
+    for (int i = 0; i < dests.length; i++) {
+      bind(dests[i], node.outputs[i]);
+    }
+  }
+
+  private void bind(String name, Value value) {
+    value.references++;
+    Value previous = names.put(name, value);
+    if (previous != null) {
+      release(previous);
+    }
+  }
+
+  /**
+   * Drops a reference to a value. A value that is no longer referenced is removed from the model
+   * if it was computed, and a node none of whose values are referenced is never computed, so it
+   * drops its references to its inputs in turn.
+   *
+   * @param value the value.
+   */
+  private void release(Value value) {
+    Deque<Value> unreferenced = new ArrayDeque<>();
+    if (--value.references == 0) {
+      unreferenced.push(value);
+    }
+    while (!unreferenced.isEmpty()) {
+      Value next = unreferenced.pop();
+      Node node = next.producer;
+      if (node.computed) {
+        model.remove(next.key);
+      } else if (!node.discarded && node.isUnused()) {
+        node.discarded = true;
+        for (Value input : node.inputs) {
+          if (--input.references == 0) {
+            unreferenced.push(input);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes a value and every value it depends on that has not been computed yet, deepest
+   * first.
+   *
+   * @param target the value.
+   */
+  private void compute(Value target) {
+    Deque<Node> pending = new ArrayDeque<>();
+    pending.push(target.producer);
+    while (!pending.isEmpty()) {
+      Node node = pending.peek();
+      if (node.computed) {
+        pending.pop();
+        continue;
+      }
+      Value[] sources = node.step == null ? node.inputs : new Value[]{chainSource(node)};
+      Node missing = null;
+      for (Value source : sources) {
+        if (!source.producer.computed) {
+          missing = source.producer;
+          break;
+        }
+      }
+      if (missing != null) {
+        pending.push(missing);
+        continue;
+      }
+      run(node, sources);
+      pending.pop();
+    }
+  }
+
+  /**
+   * Finds the value a per-pixel node is computed from: the nearest value up its chain of inputs
+   * that is computed or is not the result of a per-pixel operation.
+   *
+   * @param node the node, which must be a per-pixel operation.
+   * @return the value.
+   */
+  private static Value chainSource(Node node) {
+    Value source = node.inputs[0];
+    while (!source.producer.computed && source.producer.step != null) {
+      source = source.producer.inputs[0];
+    }
+    return source;
+  }
+
+  private void run(Node node, Value[] sources) {
+    String[] dests = new String[node.outputs.length];
+    for (int i = 0; i < dests.length; i++) {
+      dests[i] = node.outputs[i].key;
+    }
+    if (node.step != null && sources[0] != node.inputs[0]) {
+      List<UnaryOperator<PointChain>> steps = new ArrayList<>();
+      for (Node next = node; next != sources[0].producer; next = next.inputs[0].producer) {
+        steps.add(next.step);
+      }
+      Collections.reverse(steps);
+      PointChain chain = new PointChain();
+      for (UnaryOperator<PointChain> step : steps) {
+        chain = step.apply(chain);
+      }
+      model.applyChain(chain, sources[0].key, dests[0]);
+    } else {
+      String[] keys = new String[sources.length];
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = sources[i].key;
+      }
+      node.operation.run(model, keys, dests);
+    }
+    node.computed = true;
+    for (Value output : node.outputs) {
+      if (output.references == 0) {
+        model.remove(output.key);
+      }
+    }
+    for (Value input : node.inputs) {
+      release(input);
+    }
+  }
+
+  /**
+   * Runs an operation on the underlying model.
+   */
+  @FunctionalInterface
+  private interface Operation {
+
+    /**
+     * Runs the operation.
+     *
+     * @param model   the model.
+     * @param sources the keys of the images the operation reads.
+     * @param dests   the keys of the images the operation writes.
+     */
+    void run(IModel model, String[] sources, String[] dests);
+  }
+
+  /**
+   * An operation of the graph.
+   */
+  private static final class Node {
+
+    private final Value[] inputs;
+    private final Value[] outputs;
+    private final UnaryOperator<PointChain> step;
+    private final Operation operation;
+    private boolean computed;
+    private boolean discarded;
+
+    private Node(Value[] inputs, String[] keys, UnaryOperator<PointChain> step,
+        Operation operation) {
+      this.inputs = inputs;
+      this.outputs = new Value[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        outputs[i] = new Value(this, keys[i]);
+      }
+      this.step = step;
+      this.operation = operation;
+    }
+
+    private boolean isUnused() {
+      for (Value output : outputs) {
+        if (output.references > 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * A result of a node, counting the names bound to it and the pending nodes reading it.
+   */
+  private static final class Value {
+
+    private final Node producer;
+    private final String key;
+    private int references;
+
+    private Value(Node producer, String key) {
+      this.producer = producer;
+      this.key = key;
+    }
+  }
+}
@@ -1,15 +1,8 @@
 package model;
 
-import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.Graphics2D;
-import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The `Model` class implements the `IModel` interface and represents
@@ -18,42 +11,91 @@ import java.util.Set;
  */
 public class Model implements IModel {
 
-  private final HashMap<String, ArrayList<ArrayList<ArrayList<Integer>>>> storage;
+  private static final Kernel BLUR = new Kernel(new double[][]{
+      {1.0 / 16, 1.0 / 8, 1.0 / 16},
+      {1.0 / 8, 1.0 / 4, 1.0 / 8},
+      {1.0 / 16, 1.0 / 8, 1.0 / 16}
+  });
+
+  private static final Kernel SHARPEN = new Kernel(new double[][]{
+      {-1.0 / 8, -1.0 / 8, -1.0 / 8, -1.0 / 8, -1.0 / 8},
+      {-1.0 / 8, 1.0 / 4, 1.0 / 4, 1.0 / 4, -1.0 / 8},
+      {-1.0 / 8, 1.0 / 4, 1.0, 1.0 / 4, -1.0 / 8},
+      {-1.0 / 8, 1.0 / 4, 1.0 / 4, 1.0 / 4, -1.0 / 8},
+      {-1.0 / 8, -1.0 / 8, -1.0 / 8, -1.0 / 8, -1.0 / 8}
+  });
+
+  private final ImageStore storage;
+  private final ForkJoinPool pool;
+  private final Convolution convolution;
+  private final BoxBlur boxBlur;
+  private final PixelKernels kernels;
 
 
   public Model() {
-    this.storage = new HashMap<>();
+    this(new ImageStore());
   }
 
-  @Override
-  public void load(String name, ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray) {
-    storage.put(name, createRGBA(rgbaArray));
+  /**
+   * Constructs a model that keeps its images in the given store.
+   *
+   * @param storage the store holding the images of the model.
+   */
+  public Model(ImageStore storage) {
+    this(storage, ForkJoinPool.commonPool());
   }
 
+  /**
+   * Constructs a model that keeps its images in the given store and filters large images on the
+   * given pool.
+   *
+   * @param storage the store holding the images of the model.
+   * @param pool    the pool filtering runs on, or null to filter on the calling thread.
+   */
+  public Model(ImageStore storage, ForkJoinPool pool) {
+    this(storage, pool, PixelKernels.preferred());
+  }
 
-  private ArrayList<ArrayList<ArrayList<Integer>>> createRGBA(
-      ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray) {
-    if (rgbaArray.get(0).get(0).size() != 4) {
-      throw new IllegalArgumentException("Illegal array dimensions!");
-    }
-
-    return deepCopy(rgbaArray);
+  /**
+   * Constructs a model that keeps its images in the given store, filters large images on the
+   * given pool and runs its per-pixel loops on the given kernels.
+   *
+   * @param storage the store holding the images of the model.
+   * @param pool    the pool filtering runs on, or null to filter on the calling thread.
+   * @param kernels the implementation of the per-pixel loops.
+   */
+  public Model(ImageStore storage, ForkJoinPool pool, PixelKernels kernels) {
+    this.storage = storage;
+    this.pool = pool;
+    this.convolution = new Convolution(pool, kernels);
+    this.boxBlur = new BoxBlur(pool);
+    this.kernels = kernels;
   }
 
-  private ArrayList<ArrayList<ArrayList<Integer>>> deepCopy(
-      ArrayList<ArrayList<ArrayList<Integer>>> original) {
-    ArrayList<ArrayList<ArrayList<Integer>>> copy = new ArrayList<>();
+  @Override
+  public void load(String name, ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray) {
+    storage.put(name, Image.fromRgbaArray(rgbaArray));
+  }
 
-    for (ArrayList<ArrayList<Integer>> list2D : original) {
-      ArrayList<ArrayList<Integer>> copy2D = new ArrayList<>();
-      for (ArrayList<Integer> list1D : list2D) {
-        ArrayList<Integer> copy1D = new ArrayList<>(list1D);
-        copy2D.add(copy1D);
-      }
-      copy.add(copy2D);
+  @Override
+  public void load(String name, Image image) {
+    if (image == null) {
+      throw new IllegalArgumentException("The image '" + name + "' could not be loaded.");
     }
+    storage.put(name, image.share());
+  }
 
-    return copy;
+  /**
+   * Retrieves a stored image with its pixels available in the layout the calling operation
+   * prefers.
+   *
+   * @param name   the name of the image.
+   * @param layout the layout the operation reads the pixels in.
+   * @return the image, or null if no image is stored under the name.
+   */
+  private Image source(String name, ImageLayout layout) {
+    // The store counts the layout the image gains against its budget
+    return storage.get(name, layout);
   }
 
   /**
@@ -68,22 +110,12 @@ public class Model implements IModel {
     if (storage.get(src) == null) {
       throw new IllegalArgumentException("The image '" + src + "' does not exist.");
     }
-    if (storage.get(dest) == null) {
-      storage.put(dest, new ArrayList<>());
+    Image image = storage.get(src);
+    if (factor == 0) {
+      storage.put(dest, image.share());
+      return;
     }
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> brightenedImage = createRGBA(rgbaArray);
-    for (int i = 0; i < getHeight(brightenedImage); i += 1) {
-      for (int j = 0; j < getWidth(brightenedImage); j += 1) {
-        brightenedImage.get(i).get(j).set(0,
-            (int) Math.min(255, Math.max(0, rgbaArray.get(i).get(j).get(0) + factor)));
-        brightenedImage.get(i).get(j).set(1,
-            (int) Math.min(255, Math.max(0, rgbaArray.get(i).get(j).get(1) + factor)));
-        brightenedImage.get(i).get(j).set(2,
-            (int) Math.min(255, Math.max(0, rgbaArray.get(i).get(j).get(2) + factor)));
-      }
-    }
-    storage.put(dest, brightenedImage);
+    storage.put(dest, PointOperation.brighten(factor).apply(image));
   }
 
   /**
@@ -94,19 +126,8 @@ public class Model implements IModel {
    */
   @Override
   public void verticalFlip(String src, String dest) {
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> flippedImage = createRGBA(rgbaArray);
-    for (int i = 0; i < getHeight(flippedImage); i++) {
-      int lastJ = getWidth(flippedImage) - 1;
-      for (int j = 0; j < getWidth(flippedImage); j++) {
-        flippedImage.get(i).get(j).set(0, rgbaArray.get(i).get(lastJ).get(0));
-        flippedImage.get(i).get(j).set(1, rgbaArray.get(i).get(lastJ).get(1));
-        flippedImage.get(i).get(j).set(2, rgbaArray.get(i).get(lastJ).get(2));
-        flippedImage.get(i).get(j).set(3, rgbaArray.get(i).get(lastJ).get(3));
-        lastJ -= 1;
-      }
-    }
-    storage.put(dest, flippedImage);
+    // The flip is only an index transform, so no pixels are touched until the view is needed
+    storage.put(dest, storage.get(src).verticalFlipView());
   }
 
   /**
@@ -117,44 +138,7 @@ public class Model implements IModel {
    */
   @Override
   public void horizontalFlip(String src, String dest) {
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> flippedImage = createRGBA(rgbaArray);
-    int lastI = getHeight(flippedImage) - 1;
-    for (int i = 0; i < getHeight(flippedImage); i += 1) {
-      for (int j = 0; j < getWidth(flippedImage); j += 1) {
-        flippedImage.get(i).get(j).set(0, rgbaArray.get(lastI).get(j).get(0));
-        flippedImage.get(i).get(j).set(1, rgbaArray.get(lastI).get(j).get(1));
-        flippedImage.get(i).get(j).set(2, rgbaArray.get(lastI).get(j).get(2));
-        flippedImage.get(i).get(j).set(3, rgbaArray.get(lastI).get(j).get(3));
-      }
-      lastI -= 1;
-    }
-    storage.put(dest, flippedImage);
-  }
-
-  private double[][] multiplyArrays(double[][] matrixA, double[][] matrixB) {
-    int rowsA = matrixA.length;
-    int rowsB = matrixB.length;
-    int colsA = matrixA[0].length;
-    int colsB = matrixB[0].length;
-
-    if (colsA != matrixB.length) {
-      throw new IllegalArgumentException(
-          "Matrix A columns must be equal to Matrix B rows for multiplication.");
-    }
-
-    double[][] result = new double[rowsA][rowsB];
-
-    for (int i = 0; i < rowsA; i++) {
-      for (int j = 0; j < colsB; j++) {
-        result[i][j] = 0;
-        for (int k = 0; k < colsA; k++) {
-          result[i][j] += matrixA[i][k] * matrixB[k][j];
-        }
-      }
-    }
-
-    return result;
+    storage.put(dest, storage.get(src).horizontalFlipView());
   }
 
   /**
@@ -165,123 +149,221 @@ public class Model implements IModel {
    */
   @Override
   public void sepia(String src, String dest) {
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> sepiaImage = createRGBA(rgbaArray);
-    double[][] sepiaMatrixValues = {
-        {0.393, 0.769, 0.189},
-        {0.349, 0.686, 0.168},
-        {0.272, 0.534, 0.131}
-    };
-    for (int i = 0; i < getHeight(sepiaImage); i += 1) {
-      for (int j = 0; j < getWidth(sepiaImage); j += 1) {
-        double[][] pixelValueArray = new double[3][1];
-        pixelValueArray[0][0] = rgbaArray.get(i).get(j).get(0);
-        pixelValueArray[1][0] = rgbaArray.get(i).get(j).get(1);
-        pixelValueArray[2][0] = rgbaArray.get(i).get(j).get(2);
-        double[][] result = multiplyArrays(sepiaMatrixValues, pixelValueArray);
-        sepiaImage.get(i).get(j).set(0, Math.min(255, Math.max(0, (int) result[0][0])));
-        sepiaImage.get(i).get(j).set(1, Math.min(255, Math.max(0, (int) result[1][0])));
-        sepiaImage.get(i).get(j).set(2, Math.min(255, Math.max(0, (int) result[2][0])));
-      }
-    }
-    storage.put(dest, sepiaImage);
+    Image image = source(src, ImageLayout.INTERLEAVED);
+    int[] sepiaPixels = image.mapPixels(
+        (pixels, mapped) -> kernels.transform(pixels, mapped, ColorMatrix.SEPIA));
+    storage.put(dest, new Image(image.getWidth(), image.getHeight(), sepiaPixels));
   }
 
-  private void applyFilter(ArrayList<ArrayList<ArrayList<Integer>>> image, double[][] filter) {
-    int height = image.size();
-    int width = image.get(0).size();
-    int filterSize = filter.length;
+  /**
+   * Blur an image using a Gaussian-blur filter.
+   *
+   * @param src  the name of the source image.
+   * @param dest the name of the destination image.
+   */
+  @Override
+  public void blur(String src, String dest) {
+    // The Gaussian kernel is separable, so it runs as a horizontal and a vertical pass
+    Image image = source(src, ImageLayout.PLANAR);
 
-    // Create a copy of the original image to store the filtered values
-    ArrayList<ArrayList<ArrayList<Integer>>> filteredImage = new ArrayList<>(height);
+    storage.put(dest, convolution.convolve(image, BLUR));
+  }
 
-    for (int i = 0; i < height; i++) {
-      filteredImage.add(new ArrayList<>());
-      for (int j = 0; j < width; j++) {
-        filteredImage.get(i).add(new ArrayList<>(3));
-      }
-    }
+  /**
+   * Blurs a region of an image, keeping the pixels outside it.
+   *
+   * @param src    the name of the source image.
+   * @param dest   the name of the destination image.
+   * @param region the region to blur.
+   */
+  @Override
+  public void blur(String src, String dest, Region region) {
+    checkSourceExists(src);
+    storage.put(dest, filter(storage.get(src), BLUR, BorderMode.ZERO, region));
+  }
 
-    // Iterate through each pixel in the original image
-    for (int i = 0; i < height; i++) {
-      for (int j = 0; j < width; j++) {
-        applyFilterAtPixel(image, i, j, filter, height, width, filterSize, filteredImage);
-      }
-    }
+  /**
+   * Sharpen an image using a sharpening filter.
+   *
+   * @param src  the name of the source image.
+   * @param dest the name of the destination image.
+   */
+  @Override
+  public void sharpen(String src, String dest) {
+    Image image = source(src, ImageLayout.PLANAR);
 
-    // Copy the filtered values back to the original image
-    for (int i = 0; i < height; i++) {
-      for (int j = 0; j < width; j++) {
-        for (int c = 0; c < 3; c++) {
-          image.get(i).get(j).set(c, filteredImage.get(i).get(j).get(c));
-        }
-      }
-    }
+    storage.put(dest, convolution.convolve(image, SHARPEN));
   }
 
-  private void applyFilterAtPixel(ArrayList<ArrayList<ArrayList<Integer>>> image, int i, int j,
-      double[][] filter, int height, int width, int filterSize,
-      ArrayList<ArrayList<ArrayList<Integer>>> filteredImage) {
-    int filterCenter = filterSize / 2;
+  /**
+   * Sharpens a region of an image, keeping the pixels outside it.
+   *
+   * @param src    the name of the source image.
+   * @param dest   the name of the destination image.
+   * @param region the region to sharpen.
+   */
+  @Override
+  public void sharpen(String src, String dest, Region region) {
+    checkSourceExists(src);
+    storage.put(dest, filter(storage.get(src), SHARPEN, BorderMode.ZERO, region));
+  }
 
-    for (int c = 0; c < 3; c++) {
-      double result = 0.0;
-      for (int x = 0; x < filterSize; x++) {
-        for (int y = 0; y < filterSize; y++) {
-          int newX = i + x - filterCenter;
-          int newY = j + y - filterCenter;
-          if (newX >= 0 && newX < height && newY >= 0 && newY < width) {
-            result += image.get(newX).get(newY).get(c) * filter[x][y];
-          }
-        }
-      }
-      filteredImage.get(i).get(j).add((int) Math.min(255, Math.max(0, result)));
+  /**
+   * Blur an image with an approximate Gaussian of any size.
+   *
+   * @param sigma the standard deviation of the Gaussian, in pixels.
+   * @param src   the name of the source image.
+   * @param dest  the name of the destination image.
+   */
+  @Override
+  public void blurRadius(double sigma, String src, String dest) {
+    checkSourceExists(src);
+    Image image = source(src, ImageLayout.PLANAR);
+    if (sigma > 0 && sigma < BoxBlur.MIN_SIGMA) {
+      // Rounded and clamped at the edges like the boxes, so the result does not change character
+      // at MIN_SIGMA
+      storage.put(dest, convolution.convolve(image, Kernel.gaussian(sigma), BorderMode.CLAMP,
+          true));
+      return;
     }
+    // Three box blurs from running sums cost the same for any radius
+    storage.put(dest, boxBlur.blur(image, sigma));
   }
 
   /**
-   * Blur an image using a Gaussian-blur filter.
+   * Convolve an image with a user-defined kernel.
    *
-   * @param src  the name of the source image.
-   * @param dest the name of the destination image.
+   * @param kernel the weights of the kernel, indexed by column offset and then row offset.
+   * @param border how the pixels outside the image are read.
+   * @param src    the name of the source image.
+   * @param dest   the name of the destination image.
    */
   @Override
-  public void blur(String src, String dest) {
-    double[][] blurFilter = {
-        {1.0 / 16, 1.0 / 8, 1.0 / 16},
-        {1.0 / 8, 1.0 / 4, 1.0 / 8},
-        {1.0 / 16, 1.0 / 8, 1.0 / 16}
-    };
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> blurredImage = createRGBA(rgbaArray);
+  public void convolve(double[][] kernel, BorderMode border, String src, String dest) {
+    checkSourceExists(src);
+    Kernel compiled = new Kernel(kernel);
+    Image image = source(src, ImageLayout.PLANAR);
 
-    applyFilter(blurredImage, blurFilter);
+    storage.put(dest, convolution.convolve(image, compiled, border));
+  }
 
-    storage.put(dest, blurredImage);
+  /**
+   * Convolves a region of an image with a kernel, keeping the pixels outside it.
+   *
+   * @param kernel the weights of the kernel, indexed by column offset and then row offset.
+   * @param border how the pixels outside the image are read.
+   * @param src    the name of the source image.
+   * @param dest   the name of the destination image.
+   * @param region the region to filter.
+   */
+  @Override
+  public void convolve(double[][] kernel, BorderMode border, String src, String dest,
+      Region region) {
+    checkSourceExists(src);
+    storage.put(dest, filter(storage.get(src), new Kernel(kernel), border, region));
   }
 
   /**
-   * Sharpen an image using a sharpening filter.
+   * Filters a region of an image. Only the region and the halo the kernel reaches around it are
+   * filtered, and the image ends where it did, so the pixels of the region are those filtering
+   * the whole image gives.
+   */
+  private Image filter(Image image, Kernel kernel, BorderMode border, Region region) {
+    int[] bounds = region.bounds(image.getWidth(), image.getHeight());
+    int reach = kernel.size() / 2;
+    int fromX = 0;
+    int fromY = 0;
+    int toX = image.getWidth();
+    int toY = image.getHeight();
+    if (border != BorderMode.WRAP) {
+      // A wrapping border reads the opposite side of the image, so only it needs the whole image
+      fromX = Math.max(0, bounds[0] - reach);
+      fromY = Math.max(0, bounds[1] - reach);
+      toX = Math.min(toX, bounds[0] + bounds[2] + reach);
+      toY = Math.min(toY, bounds[1] + bounds[3] + reach);
+    }
+    Image filtered = convolution.convolve(image.cropView(fromX, fromY, toX - fromX, toY - fromY),
+        kernel, border);
+    return paste(image, filtered, bounds[0] - fromX, bounds[1] - fromY, bounds);
+  }
+
+  /**
+   * Copies an image with a rectangle of it replaced by pixels of another image.
    *
-   * @param src  the name of the source image.
-   * @param dest the name of the destination image.
+   * @param image  the image.
+   * @param patch  the image holding the new pixels.
+   * @param patchX the column of the patch the rectangle starts at.
+   * @param patchY the row of the patch the rectangle starts at.
+   * @param bounds the column, row, width and height of the rectangle in the image.
+   * @return a new image holding the pixels.
+   */
+  private static Image paste(Image image, Image patch, int patchX, int patchY, int[] bounds) {
+    int width = image.getWidth();
+    int[] pixels = image.readPixels().clone();
+    int[] patchPixels = patch.readPixels();
+    for (int y = 0; y < bounds[3]; y++) {
+      System.arraycopy(patchPixels, (patchY + y) * patch.getWidth() + patchX, pixels,
+          (bounds[1] + y) * width + bounds[0], bounds[2]);
+    }
+    return new Image(width, image.getHeight(), pixels);
+  }
+
+  /**
+   * Transform the red, green and blue channels of every pixel with a color matrix.
+   *
+   * @param matrix the color matrix.
+   * @param src    the name of the source image.
+   * @param dest   the name of the destination image.
    */
   @Override
-  public void sharpen(String src, String dest) {
-    double[][] sharpenFilter = {
-        {-1.0 / 8, -1.0 / 8, -1.0 / 8, -1.0 / 8, -1.0 / 8},
-        {-1.0 / 8, 1.0 / 4, 1.0 / 4, 1.0 / 4, -1.0 / 8},
-        {-1.0 / 8, 1.0 / 4, 1.0, 1.0 / 4, -1.0 / 8},
-        {-1.0 / 8, 1.0 / 4, 1.0 / 4, 1.0 / 4, -1.0 / 8},
-        {-1.0 / 8, -1.0 / 8, -1.0 / 8, -1.0 / 8, -1.0 / 8}
-    };
+  public void colorMatrix(ColorMatrix matrix, String src, String dest) {
+    checkSourceExists(src);
+    Image image = source(src, ImageLayout.INTERLEAVED);
+    int[] transformedPixels = image.mapPixels(
+        (pixels, mapped) -> kernels.transform(pixels, mapped, matrix));
+    storage.put(dest, new Image(image.getWidth(), image.getHeight(), transformedPixels));
+  }
 
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> sharpImage = createRGBA(rgbaArray);
+  /**
+   * Map the red, green and blue channels of every pixel with a point operation.
+   *
+   * @param operation the point operation.
+   * @param src       the name of the source image.
+   * @param dest      the name of the destination image.
+   */
+  @Override
+  public void pointOperation(PointOperation operation, String src, String dest) {
+    checkSourceExists(src);
+    storage.put(dest, operation.apply(storage.get(src)));
+  }
 
-    applyFilter(sharpImage, sharpenFilter);
+  /**
+   * Apply a run of per-pixel operations in a single pass, storing only the result of the last one.
+   *
+   * @param chain the operations.
+   * @param src   the name of the source image.
+   * @param dest  the name of the destination image.
+   */
+  @Override
+  public void applyChain(PointChain chain, String src, String dest) {
+    checkSourceExists(src);
+    storage.put(dest, chain.apply(storage.get(src), pool));
+  }
 
-    storage.put(dest, sharpImage);
+  /**
+   * Applies a run of per-pixel operations to a region of an image, keeping the pixels outside it.
+   *
+   * @param chain  the operations.
+   * @param src    the name of the source image.
+   * @param dest   the name of the destination image.
+   * @param region the region to process.
+   */
+  @Override
+  public void applyChain(PointChain chain, String src, String dest, Region region) {
+    checkSourceExists(src);
+    Image image = storage.get(src);
+    int[] bounds = region.bounds(image.getWidth(), image.getHeight());
+    storage.put(dest, paste(image, chain.apply(image, bounds, pool), 0, 0, bounds));
   }
 
   /**
@@ -292,19 +374,32 @@ public class Model implements IModel {
    */
   @Override
   public void valueComponent(String src, String dest) {
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> valueCompImage = createRGBA(rgbaArray);
-    for (int i = 0; i < getHeight(valueCompImage); i += 1) {
-      for (int j = 0; j < getWidth(valueCompImage); j += 1) {
-        int maxValue = Math.max(
-            Math.max(rgbaArray.get(i).get(j).get(0), rgbaArray.get(i).get(j).get(1)
-            ), rgbaArray.get(i).get(j).get(2));
-        valueCompImage.get(i).get(j).set(0, Math.min(255, Math.max(0, maxValue)));
-        valueCompImage.get(i).get(j).set(1, Math.min(255, Math.max(0, maxValue)));
-        valueCompImage.get(i).get(j).set(2, Math.min(255, Math.max(0, maxValue)));
-      }
+    Image image = source(src, ImageLayout.INTERLEAVED);
+    int[] valuePixels = new int[image.getWidth() * image.getHeight()];
+    for (int i = 0; i < valuePixels.length; i++) {
+      int argb = image.getArgb(i);
+      int maxValue = Math.max(Math.max(Image.red(argb), Image.green(argb)), Image.blue(argb));
+      valuePixels[i] = Image.argb(Image.alpha(argb), maxValue, maxValue, maxValue);
     }
-    storage.put(dest, valueCompImage);
+    storage.put(dest, new Image(image.getWidth(), image.getHeight(), valuePixels));
+  }
+
+  /**
+   * Replaces a region of an image with its value component, keeping the pixels outside it.
+   *
+   * @param src    the name of the source image.
+   * @param dest   the name of the destination image.
+   * @param region the region to process.
+   */
+  @Override
+  public void valueComponent(String src, String dest, Region region) {
+    checkSourceExists(src);
+    Image image = storage.get(src);
+    int[] bounds = region.bounds(image.getWidth(), image.getHeight());
+    int[] window = image.cropView(bounds[0], bounds[1], bounds[2], bounds[3]).readPixels();
+    int[] value = new int[window.length];
+    kernels.greys(window, value, null, null);
+    storage.put(dest, paste(image, new Image(bounds[2], bounds[3], value), 0, 0, bounds));
   }
 
   /**
@@ -315,19 +410,10 @@ public class Model implements IModel {
    */
   @Override
   public void intensityComponent(String src, String dest) {
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> intensityImage = createRGBA(rgbaArray);
-    for (int i = 0; i < getHeight(intensityImage); i += 1) {
-      for (int j = 0; j < getWidth(intensityImage); j += 1) {
-        double average = (rgbaArray.get(i).get(j).get(0)
-            + rgbaArray.get(i).get(j).get(1)
-            + rgbaArray.get(i).get(j).get(2)) / 3.0;
-        intensityImage.get(i).get(j).set(0, (int) Math.min(255, Math.max(0, average)));
-        intensityImage.get(i).get(j).set(1, (int) Math.min(255, Math.max(0, average)));
-        intensityImage.get(i).get(j).set(2, (int) Math.min(255, Math.max(0, average)));
-      }
-    }
-    storage.put(dest, intensityImage);
+    Image image = source(src, ImageLayout.INTERLEAVED);
+    int[] intensityPixels = image.mapPixels(
+        (pixels, mapped) -> kernels.transform(pixels, mapped, ColorMatrix.INTENSITY));
+    storage.put(dest, new Image(image.getWidth(), image.getHeight(), intensityPixels));
   }
 
   /**
@@ -338,34 +424,34 @@ public class Model implements IModel {
    */
   @Override
   public void lumaComponent(String src, String dest) {
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> lumaImage = createRGBA(rgbaArray);
-    for (int i = 0; i < getHeight(lumaImage); i += 1) {
-      for (int j = 0; j < getWidth(lumaImage); j += 1) {
-        double weightedSum = 0.2126 * rgbaArray.get(i).get(j).get(0)
-            + 0.7152 * rgbaArray.get(i).get(j).get(1)
-            + 0.0722 * rgbaArray.get(i).get(j).get(2);
-        lumaImage.get(i).get(j).set(0, (int) Math.min(255, Math.max(0, weightedSum)));
-        lumaImage.get(i).get(j).set(1, (int) Math.min(255, Math.max(0, weightedSum)));
-        lumaImage.get(i).get(j).set(2, (int) Math.min(255, Math.max(0, weightedSum)));
-      }
-    }
-    storage.put(dest, lumaImage);
+    Image image = source(src, ImageLayout.INTERLEAVED);
+    int[] lumaPixels = image.mapPixels(kernels::luma);
+    storage.put(dest, new Image(image.getWidth(), image.getHeight(), lumaPixels));
   }
 
   private void getColourComponent(int colour, String src, String dest) {
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> colourCompImage = createRGBA(rgbaArray);
-    for (int i = 0; i < getHeight(colourCompImage); i += 1) {
-      for (int j = 0; j < getWidth(colourCompImage); j += 1) {
-        for (int c = 0; c < 3; c++) {
-          if (c != colour) {
-            colourCompImage.get(i).get(j).set(c, 0);
-          }
-        }
-      }
+    Image image = storage.get(src);
+    if (!image.hasLayout(ImageLayout.PLANAR)) {
+      storage.put(dest, colourComponent(image, colour));
+      return;
     }
-    storage.put(dest, colourCompImage);
+    PlanarImage planes = image.planar();
+    byte[] zeroPlane = new byte[planes.getWidth() * planes.getHeight()];
+    storage.put(dest, colourComponent(planes, colour, zeroPlane));
+  }
+
+  private Image colourComponent(Image image, int colour) {
+    // Keep alpha and the selected channel by masking the source pixels
+    return image.channelView(0xFF000000 | (0xFF << (16 - 8 * colour)));
+  }
+
+  private Image colourComponent(PlanarImage planes, int colour, byte[] zeroPlane) {
+    // Keep alpha and the selected channel, and point the other two at the zero plane
+    return new Image(new PlanarImage(planes.getWidth(), planes.getHeight(),
+        colour == 0 ? planes.plane(0) : zeroPlane,
+        colour == 1 ? planes.plane(1) : zeroPlane,
+        colour == 2 ? planes.plane(2) : zeroPlane,
+        planes.plane(3)));
   }
 
   /**
@@ -401,6 +487,92 @@ public class Model implements IModel {
     getColourComponent(2, src, dest);
   }
 
+  /**
+   * Extracts several components of an image at once. The value, intensity and luma components are
+   * computed in the same pass over the source pixels, each pixel being read once for all of them,
+   * and the red, green and blue components are views that need no pass at all.
+   *
+   * @param src        the name of the source image.
+   * @param components the components to extract.
+   * @param dest       the names of the destination images, one per component in the same order.
+   */
+  @Override
+  public void components(String src, ColorComponent[] components, String[] dest) {
+    checkSourceExists(src);
+    if (components.length != dest.length) {
+      throw new IllegalArgumentException("Each component needs a destination image.");
+    }
+    Image image = storage.get(src);
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] value = null;
+    int[] intensity = null;
+    int[] luma = null;
+    for (ColorComponent component : components) {
+      if (component == ColorComponent.VALUE && value == null) {
+        value = new int[width * height];
+      } else if (component == ColorComponent.INTENSITY && intensity == null) {
+        intensity = new int[width * height];
+      } else if (component == ColorComponent.LUMA && luma == null) {
+        luma = new int[width * height];
+      }
+    }
+    if (value != null || intensity != null || luma != null) {
+      image.prepare(ImageLayout.INTERLEAVED);
+      greys(image, value, intensity, luma);
+    }
+    // The channels are masked views, or planes pointing at a shared zero plane, so need no pass
+    PlanarImage planes = image.hasLayout(ImageLayout.PLANAR) ? image.planar() : null;
+    byte[] zeroPlane = planes != null ? new byte[width * height] : null;
+    for (int i = 0; i < components.length; i++) {
+      Image component;
+      switch (components[i]) {
+        case VALUE:
+          component = new Image(width, height, value);
+          break;
+        case INTENSITY:
+          component = new Image(width, height, intensity);
+          break;
+        case LUMA:
+          component = new Image(width, height, luma);
+          break;
+        default:
+          int colour = components[i].ordinal() - ColorComponent.RED.ordinal();
+          component = planes != null ? colourComponent(planes, colour, zeroPlane)
+              : colourComponent(image, colour);
+      }
+      storage.put(dest[i], component);
+    }
+  }
+
+  /**
+   * Computes the greyscale components of an image run by run, so off-heap pixels are never read
+   * onto the heap whole.
+   */
+  private void greys(Image image, int[] value, int[] intensity, int[] luma) {
+    int size = image.getWidth() * image.getHeight();
+    image.readPixels((pixels, from) -> {
+      if (pixels.length == size) {
+        kernels.greys(pixels, value, intensity, luma);
+        return;
+      }
+      int[] runValue = value != null ? new int[pixels.length] : null;
+      int[] runIntensity = intensity != null ? new int[pixels.length] : null;
+      int[] runLuma = luma != null ? new int[pixels.length] : null;
+      kernels.greys(pixels, runValue, runIntensity, runLuma);
+      copyRun(runValue, value, from);
+      copyRun(runIntensity, intensity, from);
+      copyRun(runLuma, luma, from);
+    });
+  }
+
+  private static void copyRun(int[] run, int[] target, int from) {
+    if (run != null) {
+      System.arraycopy(run, 0, target, from, run.length);
+    }
+  }
+
+
   /**
    * Split a single image into three images representing each of the three channels.
    *
@@ -412,9 +584,13 @@ public class Model implements IModel {
     if (storage.get(src) == null) {
       throw new IllegalArgumentException("The image '" + src + "' does not exist.");
     }
+    Image image = storage.get(src);
+    PlanarImage planes = image.hasLayout(ImageLayout.PLANAR) ? image.planar() : null;
+    byte[] zeroPlane = planes != null ? new byte[planes.getWidth() * planes.getHeight()] : null;
     for (int i = 0; i < 3; i++) {
       String new_image = dest[i];
-      getColourComponent(i, src, new_image);
+      storage.put(new_image,
+          planes != null ? colourComponent(planes, i, zeroPlane) : colourComponent(image, i));
     }
   }
 
@@ -433,29 +609,20 @@ public class Model implements IModel {
         throw new IllegalArgumentException("The image '" + src + "' does not exist.");
       }
     }
-    if (storage.get(dest) == null) {
-      storage.put(dest, new ArrayList<>());
-    }
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray1 = storage.get(imageArray[0]);
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray2 = storage.get(imageArray[1]);
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray3 = storage.get(imageArray[2]);
-
-    ArrayList<ArrayList<ArrayList<Integer>>> combinedImage = createRGBA(rgbaArray1);
+    Image image1 = source(imageArray[0], ImageLayout.PLANAR);
+    Image image2 = source(imageArray[1], ImageLayout.PLANAR);
+    Image image3 = source(imageArray[2], ImageLayout.PLANAR);
 
-    if ((getWidth(rgbaArray1) != getWidth(rgbaArray2)
-        || getWidth(rgbaArray1) != getWidth(rgbaArray3))
-        || (getHeight(rgbaArray1) != getHeight(rgbaArray2)
-        || getHeight(rgbaArray1) != getHeight(rgbaArray3))) {
+    if ((image1.getWidth() != image2.getWidth() || image1.getWidth() != image3.getWidth())
+        || (image1.getHeight() != image2.getHeight()
+        || image1.getHeight() != image3.getHeight())) {
       throw new IllegalArgumentException("Width and height of images must match!");
     }
-    for (int i = 0; i < getHeight(rgbaArray1); i += 1) {
-      for (int j = 0; j < getWidth(rgbaArray1); j += 1) {
-        combinedImage.get(i).get(j).set(0, rgbaArray1.get(i).get(j).get(0));
-        combinedImage.get(i).get(j).set(1, rgbaArray2.get(i).get(j).get(1));
-        combinedImage.get(i).get(j).set(2, rgbaArray3.get(i).get(j).get(2));
-      }
-    }
-    storage.put(dest, combinedImage);
+    // Each channel of the result is a plane of one of the sources, read without converting the
+    // others when a source is off the heap
+    storage.put(dest, new Image(new PlanarImage(image1.getWidth(), image1.getHeight(),
+        image1.channelPlane(0), image2.channelPlane(1), image3.channelPlane(2),
+        image1.channelPlane(3))));
   }
 
   /**
@@ -466,7 +633,41 @@ public class Model implements IModel {
    */
   @Override
   public ArrayList<ArrayList<ArrayList<Integer>>> getRgbaArray(String name) {
-    return storage.get(name);
+    Image image = source(name, ImageLayout.INTERLEAVED);
+    return image == null ? null : image.toRgbaArray();
+  }
+
+  /**
+   * Retrieves the image stored under the given name.
+   *
+   * @param name the name of the image.
+   * @return the image, or null if no image is stored under the name.
+   */
+  @Override
+  public Image getImage(String name) {
+    Image image = storage.get(name);
+    if (image == null) {
+      return null;
+    }
+    // Callers get their own handle, so modifying it never changes the stored image. Off-heap
+    // pixels are copied, since they are freed as soon as the name is overwritten.
+    return image.directBuffer() != null ? image.copy() : image.share();
+  }
+
+  @Override
+  public int[][] getHistograms(String name) {
+    Image image = storage.get(name);
+    return image == null ? null : Histograms.copy(Histograms.count(image, pool));
+  }
+
+  /**
+   * Removes the image stored under the given name, if any.
+   *
+   * @param name the name of the image.
+   */
+  @Override
+  public void remove(String name) {
+    storage.remove(name);
   }
 
   /**
@@ -479,28 +680,52 @@ public class Model implements IModel {
   @Override
   public void chop(float percentage, String src, String dest) {
     checkSourceExists(src);
+    checkChop(percentage);
+    Image image = storage.get(src);
+    int choppedWidth = (int) Math.ceil(image.getWidth() * (percentage / 100));
+    if (choppedWidth == image.getWidth()) {
+      storage.put(dest, image.share());
+      return;
+    }
+    storage.put(dest, image.cropView(0, 0, choppedWidth, image.getHeight()));
+  }
+
+  /**
+   * Checks the percentage of the columns a chop keeps.
+   *
+   * @param percentage the percentage of the width.
+   * @throws IllegalArgumentException if it is not between 0 and 100.
+   */
+  static void checkChop(float percentage) {
     if (percentage < 0 || percentage > 100) {
       throw new IllegalArgumentException("Invalid percentage!");
     }
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> choppedImage = new ArrayList<>();
-    int height = rgbaArray.get(0).size();
-    int width = rgbaArray.size();
-
-    for (int x = 0; x < width * (percentage / 100); x++) {
-      ArrayList<ArrayList<Integer>> rowList = new ArrayList<>();
-      for (int y = 0; y < height; y++) {
-        ArrayList<Integer> pixel = new ArrayList<>();
-        pixel.add(rgbaArray.get(x).get(y).get(0));
-        pixel.add(rgbaArray.get(x).get(y).get(1));
-        pixel.add(rgbaArray.get(x).get(y).get(2));
-        pixel.add(rgbaArray.get(x).get(y).get(3));
-        rowList.add(pixel);
-      }
-      choppedImage.add(rowList);
+  }
 
+  /**
+   * Checks the black, mid and white points of a level adjustment.
+   *
+   * @param b the black point.
+   * @param m the mid point.
+   * @param w the white point.
+   * @throws IllegalArgumentException if they are not increasing values between 0 and 255.
+   */
+  static void checkLevels(int b, int m, int w) {
+    if (b > 255 || m > 255 || w > 255 || b < 0 || m < 0 || w < 0 || b > m || m > w) {
+      throw new IllegalArgumentException("Invalid b,m,w values");
+    }
+  }
+
+  /**
+   * Checks the percentage of the coefficients a compression drops.
+   *
+   * @param percent the percentage.
+   * @throws IllegalArgumentException if it is negative, or drops every coefficient.
+   */
+  static void checkCompression(float percent) {
+    if (percent < 0 || percent >= 100) {
+      throw new IllegalArgumentException("Illegal percentage!");
     }
-    storage.put(dest, choppedImage);
   }
 
   private void checkSourceExists(String src) {
@@ -521,51 +746,27 @@ public class Model implements IModel {
   public void underlay(String original, String src, String dest) {
     checkSourceExists(src);
     checkSourceExists(original);
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> originalRgbaArray = storage.get(original);
-
-    int height = originalRgbaArray.get(0).size();
-    int width = originalRgbaArray.size();
-    ArrayList<ArrayList<ArrayList<Integer>>> stitchedImage = new ArrayList<>();
-    for (int x = 0; x < width; x++) {
-      ArrayList<ArrayList<Integer>> rowList = new ArrayList<>();
-      for (int y = 0; y < height; y++) {
-        ArrayList<Integer> pixel = new ArrayList<>();
-        if (x > rgbaArray.size() - 1) {
-          pixel.add(originalRgbaArray.get(x).get(y).get(0));
-          pixel.add(originalRgbaArray.get(x).get(y).get(1));
-          pixel.add(originalRgbaArray.get(x).get(y).get(2));
-          pixel.add(originalRgbaArray.get(x).get(y).get(3));
+    Image image = source(src, ImageLayout.INTERLEAVED);
+    Image originalImage = source(original, ImageLayout.INTERLEAVED);
+
+    int width = originalImage.getWidth();
+    int height = originalImage.getHeight();
+    if (image.getWidth() == width && image.getHeight() == height) {
+      storage.put(dest, image.share());
+      return;
+    }
+    int[] stitchedPixels = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        if (x > image.getWidth() - 1) {
+          stitchedPixels[y * width + x] = originalImage.getArgb(x, y);
         } else {
-          pixel.add(rgbaArray.get(x).get(y).get(0));
-          pixel.add(rgbaArray.get(x).get(y).get(1));
-          pixel.add(rgbaArray.get(x).get(y).get(2));
-          pixel.add(rgbaArray.get(x).get(y).get(3));
+          stitchedPixels[y * width + x] = image.getArgb(x, y);
         }
-        rowList.add(pixel);
       }
-      stitchedImage.add(rowList);
-
-    }
-    storage.put(dest, stitchedImage);
-
-  }
-
-  private Graphics getGraphics(BufferedImage histogramImage) {
-    Graphics2D graphics = (Graphics2D) histogramImage.getGraphics();
-    graphics.setColor(Color.WHITE);
-    graphics.fillRect(0, 0, histogramImage.getWidth(), histogramImage.getHeight());
-    graphics.setColor(Color.LIGHT_GRAY); // You can choose a different color for the grid lines
-    int gridSize = 16; // Adjust the grid size as needed
-
-    for (int i = 0; i < histogramImage.getWidth(); i += gridSize) {
-      graphics.drawLine(i, 0, i, histogramImage.getHeight());
     }
+    storage.put(dest, new Image(width, height, stitchedPixels));
 
-    for (int j = 0; j < histogramImage.getHeight(); j += gridSize) {
-      graphics.drawLine(0, j, histogramImage.getWidth(), j);
-    }
-    return graphics;
   }
 
   /**
@@ -577,107 +778,7 @@ public class Model implements IModel {
   @Override
   public void histogram(String src, String dest) {
     checkSourceExists(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-
-    BufferedImage histogramImage = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
-    System.setProperty("java.awt.headless", "true");
-
-    final Graphics graphics = getGraphics(histogramImage);
-
-    // Initialize arrays to store histogram data for each channel
-    ArrayList<int[]> histogramArray = getHistogram(rgbaArray);
-
-    // Find the maximum count for normalization
-    int maxCount = Math.max(
-        Math.max(maxValue(histogramArray.get(0)), maxValue(histogramArray.get(1))),
-        maxValue(histogramArray.get(2)));
-
-    // Draw histograms
-    drawHistogram(graphics, histogramArray.get(0), Color.RED, maxCount);
-    drawHistogram(graphics, histogramArray.get(1), Color.GREEN, maxCount);
-    drawHistogram(graphics, histogramArray.get(2), Color.BLUE, maxCount);
-    graphics.dispose();
-
-    storage.put(dest, convertToArray(histogramImage));
-  }
-
-
-  private ArrayList<int[]> getHistogram(ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray) {
-    int[] redHistogram = new int[256];
-    int[] greenHistogram = new int[256];
-    int[] blueHistogram = new int[256];
-
-    for (int i = 0; i < rgbaArray.size(); i++) {
-      for (int j = 0; j < rgbaArray.get(0).size(); j++) {
-        int red = rgbaArray.get(i).get(j).get(0);
-        int green = rgbaArray.get(i).get(j).get(1);
-        int blue = rgbaArray.get(i).get(j).get(2);
-
-        redHistogram[red]++;
-        greenHistogram[green]++;
-        blueHistogram[blue]++;
-      }
-    }
-    ArrayList<int[]> result = new ArrayList<>();
-    result.add(redHistogram);
-    result.add(greenHistogram);
-    result.add(blueHistogram);
-    return result;
-
-
-  }
-
-  private void drawHistogram(java.awt.Graphics graphics, int[] chartData, Color color,
-      int maxCount) {
-
-
-    Graphics2D g2d = (Graphics2D) graphics;
-    g2d.setColor(color);
-
-    for (int i = 0; i < chartData.length - 1; i++) {
-      int normalizedValue = (int) (((double) chartData[i] / (maxCount)) * 255);
-
-      int y1 = 255 - normalizedValue;
-      int x2 = i + 1;
-      normalizedValue = (int) (((double) chartData[i+1] / (maxCount)) * 255);
-      int y2 = 255 - normalizedValue;
-
-      g2d.drawLine(i, y1, x2, y2);
-    }
-  }
-
-
-  private int maxValue(int[] array) {
-    int max = array[0];
-    for (int value : array) {
-      if (value > max) {
-        max = value;
-      }
-    }
-    return max;
-  }
-
-  protected ArrayList<ArrayList<ArrayList<Integer>>> convertToArray(BufferedImage image) {
-    int width = image.getWidth();
-    int height = image.getHeight();
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArrayList = new ArrayList<>();
-    boolean flag = image.getColorModel().hasAlpha();
-
-    for (int x = 0; x < width; x++) {
-      ArrayList<ArrayList<Integer>> rowList = new ArrayList<>();
-      for (int y = 0; y < height; y++) {
-        ArrayList<Integer> pixel = new ArrayList<>();
-        int rgb = image.getRGB(x, y);
-        pixel.add((rgb >> 16) & 0xFF);  // Red component
-        pixel.add((rgb >> 8) & 0xFF);   // Green component
-        pixel.add(rgb & 0xFF);
-        pixel.add(flag ? (rgb >> 24) & 0xFF : 255); // Alpha component
-        rowList.add(pixel);
-      }
-      rgbaArrayList.add(rowList);
-    }
-
-    return rgbaArrayList;
+    storage.put(dest, HistogramRenderer.render(Histograms.count(storage.get(src), pool)));
   }
 
   /**
@@ -689,40 +790,9 @@ public class Model implements IModel {
   @Override
   public void colorCorrect(String src, String dest) {
     checkSourceExists(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<int[]> histograms = getHistogram(rgbaArray);
-    int redPeak = findPeak(histograms.get(0));
-    int greenPeak = findPeak(histograms.get(1));
-    int bluePeak = findPeak(histograms.get(2));
-
-    // Compute average peak value
-    int averagePeak = Math.round((float) (redPeak + greenPeak + bluePeak) / 3);
-    int redAdjustment = averagePeak - redPeak;
-    int greenAdjustment = averagePeak - greenPeak;
-    int blueAdjustment = averagePeak - bluePeak;
-    ArrayList<ArrayList<ArrayList<Integer>>> correctedArrayList = new ArrayList<>();
-    for (ArrayList<ArrayList<Integer>> row : rgbaArray) {
-      ArrayList<ArrayList<Integer>> correctedRow = new ArrayList<>();
-
-      for (ArrayList<Integer> pixel : row) {
-        int adjustedRed = adjustValue(pixel.get(0), redAdjustment);
-        int adjustedGreen = adjustValue(pixel.get(1), greenAdjustment);
-        int adjustedBlue = adjustValue(pixel.get(2), blueAdjustment);
-        int alpha = pixel.get(3);
-
-        ArrayList<Integer> correctedPixel = new ArrayList<>();
-        correctedPixel.add(adjustedRed);
-        correctedPixel.add(adjustedGreen);
-        correctedPixel.add(adjustedBlue);
-        correctedPixel.add(alpha);
-
-        correctedRow.add(correctedPixel);
-      }
-
-      correctedArrayList.add(correctedRow);
-    }
-
-    storage.put(dest, correctedArrayList);
+    Image image = storage.get(src);
+    storage.put(dest, PointOperation.colorCorrect(Histograms.count(image, pool))
+        .apply(image));
   }
 
   /**
@@ -737,117 +807,17 @@ public class Model implements IModel {
   @Override
   public void levelAdjust(int b, int m, int w, String src, String dest) {
     checkSourceExists(src);
-    if (b > 255 || m > 255 || w > 255 || b < 0 || m < 0 || w < 0 || b > m || m > w) {
-      throw new IllegalArgumentException("Invalid b,m,w values");
-
-    }
-    if (storage.get(src) == null) {
-      throw new IllegalArgumentException("The image '" + src + "' does not exist.");
-    }
-    if (storage.get(dest) == null) {
-      storage.put(dest, new ArrayList<>());
-    }
-
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> correctedArrayList = new ArrayList<>();
-    for (ArrayList<ArrayList<Integer>> row : rgbaArray) {
-      ArrayList<ArrayList<Integer>> correctedRow = new ArrayList<>();
-
-      for (ArrayList<Integer> pixel : row) {
-        int adjustedRed = applyLevelAdj(b, m, w, pixel.get(0));
-        int adjustedGreen = applyLevelAdj(b, m, w, pixel.get(1));
-        int adjustedBlue = applyLevelAdj(b, m, w, pixel.get(2));
-        int alpha = pixel.get(3);
-
-        ArrayList<Integer> correctedPixel = new ArrayList<>();
-        correctedPixel.add(adjustedRed);
-        correctedPixel.add(adjustedGreen);
-        correctedPixel.add(adjustedBlue);
-        correctedPixel.add(alpha);
-
-        correctedRow.add(correctedPixel);
-      }
-      correctedArrayList.add(correctedRow);
-    }
-    storage.put(dest, correctedArrayList);
-  }
-
-  private int applyLevelAdj(int b, int m, int w, int x) {
-    double a = Math.pow(b, 2) * (m - w) - b * (Math.pow(m, 2)
-        - Math.pow(w, 2)) + w * Math.pow(m, 2) - m * Math.pow(w, 2);
-    double aA = -b * (128 - 255) + 128 * w - 255 * m;
-    double aB = Math.pow(b, 2) * (128 - 255) + 255 * Math.pow(m, 2) - 128 * Math.pow(w, 2);
-    double aC =
-        Math.pow(b, 2) * (255 * m - 128 * w) - b * (255 * Math.pow(m, 2) - 128 * Math.pow(w, 2));
-    double a_fraction = aA / a;
-    double b_fraction = aB / a;
-    double c_fraction = aC / a;
-    return Math.min(255, Math.max(0, (int) (a_fraction * x * x + b_fraction * x + c_fraction)));
-
-  }
+    checkLevels(b, m, w);
 
-  private int adjustValue(int originalValue, int adjustment) {
-    return Math.min(255, Math.max(0, originalValue + adjustment));
+    storage.put(dest, PointOperation.levels(b, m, w).apply(storage.get(src)));
   }
 
-  private int findPeak(int[] arr) {
-    int peakValue = 0;
-    int peakIndex = 0;
-
-    for (int i = 0; i < arr.length; i++) {
-      if (i > 244 || i < 11) {
-        continue;
-      }
-      if (arr[i] > peakValue) {
-        peakValue = arr[i];
-        peakIndex = i;
-      }
-    }
-
-    return peakIndex;
-
-  }
-
-  private ArrayList<ArrayList<ArrayList<Integer>>> padRGBA3DArrayList(
-      ArrayList<ArrayList<ArrayList<Integer>>> originalRGBA3DArrayList) {
+  private int paddedSize(Image image) {
     int paddedSize = 1;
-    while (paddedSize < Math.max(originalRGBA3DArrayList.size(),
-        originalRGBA3DArrayList.get(0).size())) {
+    while (paddedSize < Math.max(image.getWidth(), image.getHeight())) {
       paddedSize *= 2;
     }
-    ArrayList<ArrayList<Integer>> padding = new ArrayList<>();
-
-    ArrayList<ArrayList<ArrayList<Integer>>> paddedSquareRGBA = new ArrayList<>();
-
-    // Create a new padded RGBA 3D ArrayList with zeros
-    ArrayList<ArrayList<ArrayList<Integer>>> paddedRGBA3DArrayList = new ArrayList<>();
-    for (int i = 0; i < paddedSize - originalRGBA3DArrayList.get(0).size(); i++) {
-      ArrayList<Integer> paddingPixel = new ArrayList<>(List.of(0, 0, 0, 0));
-      padding.add(paddingPixel);
-    }
-
-    for (int i = 0; i < originalRGBA3DArrayList.size(); i++) {
-      ArrayList<ArrayList<Integer>> paddedRow = new ArrayList<>();
-      paddedRow.addAll(originalRGBA3DArrayList.get(i));
-      paddedRow.addAll(padding);
-      paddedRGBA3DArrayList.add(paddedRow);
-    }
-    ArrayList<ArrayList<Integer>> zeroArrayList2D = new ArrayList<>();
-
-    // Initialize the ArrayList with zeros
-    for (int i = 0; i < paddedSize; i++) {
-      ArrayList<Integer> row = new ArrayList<>();
-      for (int j = 0; j < 4; j++) {
-        row.add(0);
-      }
-      zeroArrayList2D.add(row);
-    }
-
-    for (int i = originalRGBA3DArrayList.size(); i < paddedSize; i++) {
-      paddedRGBA3DArrayList.add(zeroArrayList2D);
-    }
-
-    return paddedRGBA3DArrayList;
+    return paddedSize;
   }
 
   /**
@@ -860,241 +830,84 @@ public class Model implements IModel {
   @Override
   public void compress(float percent, String src, String dest) {
     checkSourceExists(src);
-    if (percent < 0 || percent > 100) {
-      throw new IllegalArgumentException("Illegal percentage!");
-    }
-    if (storage.get(src) == null) {
-      throw new IllegalArgumentException("The image '" + src + "' does not exist.");
-    }
-    if (storage.get(dest) == null) {
-      storage.put(dest, new ArrayList<>());
-    }
-    ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray = storage.get(src);
-    ArrayList<ArrayList<ArrayList<Integer>>> paddedRGBA = new ArrayList<>();
-    //do padding
-    paddedRGBA = padRGBA3DArrayList(rgbaArray);
-    List<List<Integer>>[] colorComponentsArray = new List[4];
-    //get color components
-    for (int i = 0; i < 4; i++) {
-      colorComponentsArray[i] = getColorComp(paddedRGBA, i);
-    }
-    List<List<Double>>[] compressed = new List[3];
-
-    //get harr
-    for (int i = 0; i < 3; i++) {
-      compressed[i] = haar(colorComponentsArray[i]);
-      ArrayList<Double> flattenedList = new ArrayList<>();
-      //create list to find threshold
-      for (List<Double> row : compressed[i]) {
-        for (double val : row) {
-          flattenedList.add(Math.abs(val));
-
-        }
-      }
-      //unique absolute values
-      Set<Double> uniqueSet = new HashSet<>(flattenedList);
-      flattenedList = new ArrayList<>(uniqueSet);
-      Collections.sort(flattenedList);
-      int indx = (int) ((percent / 100) * flattenedList.size());
-      double threshold = flattenedList.get(indx);
-      applyThreshold(compressed[i], threshold);
-    }
-
-    for (int i = 0; i < 3; i++) {
-      inverseHaar(compressed[i]);
-    }
-
-    for (int i = 0; i < 3; i++) {
-      colorComponentsArray[i] = unpadAndRound(compressed[i], getWidth(rgbaArray),
-          getHeight(rgbaArray));
+    checkCompression(percent);
+    Image image = source(src, ImageLayout.PLANAR);
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int paddedSize = paddedSize(image);
+    HaarWavelet wavelet = new HaarWavelet(paddedSize);
+    // One buffer of coefficients and one of their sorted magnitudes serve all three channels
+    double[] coefficients = new double[paddedSize * paddedSize];
+    double[] magnitudes = new double[coefficients.length];
+    byte[][] compressed = new byte[3][];
+    for (int c = 0; c < 3; c++) {
+      pad(image, c, coefficients, paddedSize);
+      wavelet.forward(coefficients);
+      applyThreshold(coefficients, threshold(coefficients, magnitudes, percent));
+      wavelet.inverse(coefficients);
+      compressed[c] = unpadAndRound(coefficients, paddedSize, width, height);
     }
-    storage.put(dest, combineChannels(colorComponentsArray[0],
-        colorComponentsArray[1], colorComponentsArray[2], colorComponentsArray[3]));
+    // The alpha plane is not compressed, so the result shares it with the source
+    storage.put(dest, new Image(new PlanarImage(width, height, compressed[0], compressed[1],
+        compressed[2], image.channelPlane(3))));
   }
 
-  private ArrayList<ArrayList<ArrayList<Integer>>> combineChannels(
-      List<List<Integer>> red, List<List<Integer>> green,
-      List<List<Integer>> blue, List<List<Integer>> alpha) {
-    int height = red.size();
-    int width = red.get(0).size();
-
-    ArrayList<ArrayList<ArrayList<Integer>>> arr = new ArrayList<>();
-
-    for (int i = 0; i < height; i++) {
-      ArrayList<ArrayList<Integer>> row = new ArrayList<>();
-      for (int j = 0; j < width; j++) {
-        ArrayList<Integer> pixel = new ArrayList<>();
-        pixel.add(red.get(i).get(j));
-        pixel.add(green.get(i).get(j));
-        pixel.add(blue.get(i).get(j));
-        pixel.add(alpha.get(i).get(j));
-        row.add(pixel);
+  /**
+   * Copies a channel of an image into the top-left corner of a padded square of coefficients,
+   * indexed by column and then row, with zeros around it. The image is read a row at a time.
+   */
+  private static void pad(Image image, int channel, double[] padded, int paddedSize) {
+    Arrays.fill(padded, 0.0);
+    int[] row = new int[image.getWidth()];
+    for (int y = 0; y < image.getHeight(); y++) {
+      image.readChannel(channel, 0, y, row.length, row, 0);
+      for (int x = 0; x < row.length; x++) {
+        padded[x * paddedSize + y] = row[x];
       }
-      arr.add(row);
     }
-
-    return arr;
   }
 
-  private List<List<Integer>> unpadAndRound(List<List<Double>> paddedArray, int width, int height) {
-    int originalSize = paddedArray.size();
-    List<List<Integer>> originalArray = new ArrayList<>();
-
-    for (int i = 0; i < height; i++) {
-      List<Integer> row = new ArrayList<>();
-      for (int j = 0; j < width; j++) {
-        row.add(Math.min(255, Math.max(0, (int) Math.round(paddedArray.get(i).get(j)))));
-      }
-      originalArray.add(row);
+  /**
+   * Finds the magnitude below which coefficients are dropped: the one found the given
+   * percentage of the way through the distinct magnitudes, in increasing order.
+   */
+  private static double threshold(double[] coefficients, double[] magnitudes, float percent) {
+    for (int i = 0; i < coefficients.length; i++) {
+      magnitudes[i] = Math.abs(coefficients[i]);
     }
-
-    return originalArray;
-  }
-
-  private void applyThreshold(List<List<Double>> twoDList, Double threshold) {
-    //Absolute
-    for (List<Double> row : twoDList) {
-      for (int i = 0; i < row.size(); i++) {
-        if (Math.abs(row.get(i)) < threshold) {
-          row.set(i, 0.0);
-        }
+    Arrays.sort(magnitudes);
+    // Keep each distinct magnitude once, at the front of the array
+    int distinct = 0;
+    for (int i = 0; i < magnitudes.length; i++) {
+      if (i == 0 || magnitudes[i] != magnitudes[distinct - 1]) {
+        magnitudes[distinct++] = magnitudes[i];
       }
     }
-  }
-
-  private List<List<Integer>> getColorComp(
-      ArrayList<ArrayList<ArrayList<Integer>>> rgbaArray, int color) {
-    List<List<Integer>> result = new ArrayList<>();
-    for (int i = 0; i < rgbaArray.size(); i += 1) {
-      ArrayList<Integer> row = new ArrayList<>();
-      for (int j = 0; j < rgbaArray.get(0).size(); j += 1) {
-        row.add(rgbaArray.get(i).get(j).get(color));
-      }
-      result.add(row);
-
+    int index = (int) ((percent / 100) * distinct);
+    if (index >= distinct) {
+      // Dropping every coefficient leaves no magnitude to keep
+      throw new IllegalArgumentException("Illegal percentage!");
     }
-    return result;
-
+    return magnitudes[index];
   }
 
-  private List<List<Double>> haar(List<List<Integer>> inp) {
-    int c = inp.size();
-    List<List<Double>> x = new ArrayList<>();
-    for (List<Integer> row : inp) {
-      ArrayList<Double> doubleRow = new ArrayList<>();
-      for (Integer value : row) {
-        doubleRow.add((double) value); // Cast the integer to double
-      }
-      x.add(doubleRow);
-    }
-    //print(X);
-
-    while (c > 1) {
-      for (int i = 0; i < c; i++) {
-        x.set(i, transform(x.get(i)));
+  private static void applyThreshold(double[] coefficients, double threshold) {
+    for (int i = 0; i < coefficients.length; i++) {
+      if (Math.abs(coefficients[i]) < threshold) {
+        coefficients[i] = 0.0;
       }
-      //print(X);
-
-      // Transform columns
-      for (int j = 0; j < c; j++) {
-        List<Double> column = new ArrayList<>();
-        for (int i = 0; i < c; i++) {
-          column.add(i, x.get(i).get(j));
-        }
-        column = transform(column);
-        for (int i = 0; i < c; i++) {
-          x.get(i).set(j, column.get(i));
-
-        }
-      }
-
-      c /= 2;
     }
-
-    return x;
   }
 
-  private void inverseHaar(List<List<Double>> x) {
-    int rows = x.size();
-
-    int c = 2;
-    while (c <= rows) {
-
-      for (int j = 0; j < c; j++) {
-        List<Double> column = new ArrayList<>();
-        for (int i = 0; i < c; i++) {
-          column.add(i, x.get(i).get(j));
-        }
-        column = inverseTransform(column);
-        for (int i = 0; i < c; i++) {
-          x.get(i).set(j, column.get(i));
-        }
-      }
-      for (int i = 0; i < c; i++) {
-        x.set(i, inverseTransform(x.get(i)));
+  private static byte[] unpadAndRound(double[] padded, int paddedSize, int width, int height) {
+    byte[] plane = new byte[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        plane[y * width + x] = (byte) Math.min(255, Math.max(0,
+            (int) Math.round(padded[x * paddedSize + y])));
       }
-      c *= 2;
-    }
-
-  }
-
-  private ArrayList<Double> transform(List<Double> s) {
-    ArrayList<Double> avg = new ArrayList<>();
-    ArrayList<Double> diff = new ArrayList<>();
-
-    for (int i = 0; i < s.size() - 1; i += 2) {
-      double a = s.get(i);
-      double b = s.get(i + 1);
-      double av = (a + b) / Math.sqrt(2);
-      double dif = (a - b) / Math.sqrt(2);
-
-      avg.add(av);
-      diff.add(dif);
-    }
-
-    ArrayList<Double> result = new ArrayList<>(avg);
-    result.addAll(diff);
-
-    return result;
-  }
-
-  private List<Double> inverseTransform(List<Double> s) {
-    int middle = s.size() / 2;
-
-    List<Double> avg = s.subList(0, middle);
-    List<Double> diff = s.subList(middle, s.size());
-
-    List<Double> originalArray = new ArrayList<>();
-
-    for (int i = 0; i < avg.size(); i++) {
-      double av = avg.get(i);
-      double de = diff.get(i);
-
-      double a = (av + de) / Math.sqrt(2);
-      double b = (av - de) / Math.sqrt(2);
-
-      originalArray.add(a);
-      originalArray.add(b);
-    }
-
-    return originalArray;
-  }
-
-
-  int getHeight(ArrayList<ArrayList<ArrayList<Integer>>> image) {
-    if (!image.isEmpty()) {
-      return image.size();
-    } else {
-      return 0;
-    }
-  }
-
-  int getWidth(ArrayList<ArrayList<ArrayList<Integer>>> image) {
-    if (!image.isEmpty() && !image.get(0).isEmpty()) {
-      return image.get(0).size();
-    } else {
-      return 0;
     }
+    return plane;
   }
 
 
@@ -0,0 +1,136 @@
+package model;
+
+/**
+ * The `PixelKernels` class holds the innermost loops of the per-pixel operations, working on
+ * primitive arrays. There is a scalar implementation, and one built on the
+ * {@code jdk.incubator.vector} API that is used when that module is available at runtime. Both give
+ * exactly the same results, since the vector loops perform the same arithmetic operations in the
+ * same order.
+ *
+ * <p>The vector implementation lives in the separate source root {@code vector}, so the rest of
+ * the program builds with a plain {@code javac} and runs on the scalar kernels. To use it, compile
+ * that root on its own against the classes of the program, and compile and run it with
+ * {@code --add-modules jdk.incubator.vector}:
+ *
+ * <pre>
+ * javac -d out $(find model controller view benchmark -name '*.java')
+ * javac --add-modules jdk.incubator.vector -cp out -d out $(find vector -name '*.java')
+ * java --add-modules jdk.incubator.vector -cp out ...
+ * </pre>
+ *
+ * <p>Setting the system property {@code ime.vector} to false forces the scalar one.
+ */
+public abstract class PixelKernels {
+
+  private static final PixelKernels SCALAR = new ScalarPixelKernels();
+  private static final PixelKernels PREFERRED = load();
+
+  PixelKernels() {
+  }
+
+  /**
+   * Gets the scalar implementation.
+   *
+   * @return the scalar kernels.
+   */
+  public static PixelKernels scalar() {
+    return SCALAR;
+  }
+
+  /**
+   * Gets the fastest implementation available on this runtime.
+   *
+   * @return the vector kernels if the vector module is available, the scalar ones otherwise.
+   */
+  public static PixelKernels preferred() {
+    return PREFERRED;
+  }
+
+  private static PixelKernels load() {
+    if (!Boolean.parseBoolean(System.getProperty("ime.vector", "true"))
+        || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+      return SCALAR;
+    }
+    try {
+      // Only loaded by name, so the scalar path never links against the vector module
+      return (PixelKernels) Class.forName("model.VectorPixelKernels")
+          .getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return SCALAR;
+    }
+  }
+
+  /**
+   * Gets the name of this implementation.
+   *
+   * @return the name.
+   */
+  public abstract String getName();
+
+  /**
+   * Replaces the red, green and blue channels of each pixel with its luma.
+   *
+   * @param src the ARGB pixels.
+   * @param dst the array receiving the greyscale pixels.
+   */
+  public abstract void luma(int[] src, int[] dst);
+
+  /**
+   * Computes the value, intensity and luma of each pixel in one pass, reading each pixel once
+   * for all of them. Each result is the one the command computing it alone gives.
+   *
+   * @param src       the ARGB pixels.
+   * @param value     the array receiving the greyscale pixels of the largest channel, or null.
+   * @param intensity the array receiving the greyscale pixels of the average channel, or null.
+   * @param luma      the array receiving the greyscale pixels of the luma, or null.
+   */
+  public abstract void greys(int[] src, int[] value, int[] intensity, int[] luma);
+
+  /**
+   * Transforms the red, green and blue channels of each pixel with a color matrix.
+   *
+   * @param src    the ARGB pixels.
+   * @param dst    the array receiving the transformed pixels, which must not be the source.
+   * @param matrix the color matrix.
+   */
+  public abstract void transform(int[] src, int[] dst, ColorMatrix matrix);
+
+  /**
+   * Adds a run of weighted values to a run of integer sums.
+   *
+   * @param values      the values.
+   * @param valueIndex  the index of the first value.
+   * @param weight      the weight of the values.
+   * @param sums        the sums.
+   * @param sumIndex    the index of the first sum.
+   * @param length      the number of values.
+   */
+  public abstract void accumulate(int[] values, int valueIndex, int weight, int[] sums,
+      int sumIndex, int length);
+
+  /**
+   * Adds a run of weighted integer values to a run of sums.
+   *
+   * @param values      the values.
+   * @param valueIndex  the index of the first value.
+   * @param weight      the weight of the values.
+   * @param sums        the sums.
+   * @param sumIndex    the index of the first sum.
+   * @param length      the number of values.
+   */
+  public abstract void accumulate(int[] values, int valueIndex, double weight, double[] sums,
+      int sumIndex, int length);
+
+  /**
+   * Adds a run of weighted values to a run of sums.
+   *
+   * @param values      the values.
+   * @param valueIndex  the index of the first value.
+   * @param weight      the weight of the values.
+   * @param sums        the sums.
+   * @param sumIndex    the index of the first sum.
+   * @param length      the number of values.
+   */
+  public abstract void accumulate(double[] values, int valueIndex, double weight, double[] sums,
+      int sumIndex, int length);
+}
@@ -0,0 +1,110 @@
+package model;
+
+/**
+ * The `PlanarImage` class represents an image whose red, green, blue and alpha channels are kept
+ * in four separate byte planes. Each plane holds one unsigned byte per pixel in row-major order.
+ * Planes are never modified once the image is built, so several images may share a plane.
+ */
+public class PlanarImage {
+
+  private final int width;
+  private final int height;
+  private final byte[][] planes;
+
+  /**
+   * Constructs a planar image from its four channel planes.
+   *
+   * @param width  the number of columns of the image.
+   * @param height the number of rows of the image.
+   * @param red    the red plane.
+   * @param green  the green plane.
+   * @param blue   the blue plane.
+   * @param alpha  the alpha plane.
+   */
+  public PlanarImage(int width, int height, byte[] red, byte[] green, byte[] blue,
+      byte[] alpha) {
+    this.width = width;
+    this.height = height;
+    this.planes = new byte[][]{red, green, blue, alpha};
+    for (byte[] plane : planes) {
+      if (plane.length != width * height) {
+        throw new IllegalArgumentException("Illegal plane dimensions!");
+      }
+    }
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Gets the plane of one channel. The returned plane must not be modified.
+   *
+   * @param channel 0 for red, 1 for green, 2 for blue and 3 for alpha.
+   * @return the plane of the channel.
+   */
+  byte[] plane(int channel) {
+    return planes[channel];
+  }
+
+  /**
+   * Gets the value of one channel of the pixel at the given index.
+   *
+   * @param channel 0 for red, 1 for green, 2 for blue and 3 for alpha.
+   * @param index   the row-major index of the pixel.
+   * @return the value of the channel, between 0 and 255.
+   */
+  public int get(int channel, int index) {
+    return planes[channel][index] & 0xFF;
+  }
+
+  int getArgb(int index) {
+    return Image.argb(planes[3][index] & 0xFF, planes[0][index] & 0xFF,
+        planes[1][index] & 0xFF, planes[2][index] & 0xFF);
+  }
+
+  /**
+   * Splits packed ARGB pixels into channel planes.
+   *
+   * @param width  the number of columns of the image.
+   * @param height the number of rows of the image.
+   * @param pixels the ARGB pixels in row-major order.
+   * @return the planar image.
+   */
+  static PlanarImage fromInterleaved(int width, int height, int[] pixels) {
+    byte[] red = new byte[pixels.length];
+    byte[] green = new byte[pixels.length];
+    byte[] blue = new byte[pixels.length];
+    byte[] alpha = new byte[pixels.length];
+    for (int i = 0; i < pixels.length; i++) {
+      int argb = pixels[i];
+      red[i] = (byte) (argb >> 16);
+      green[i] = (byte) (argb >> 8);
+      blue[i] = (byte) argb;
+      alpha[i] = (byte) (argb >>> 24);
+    }
+    return new PlanarImage(width, height, red, green, blue, alpha);
+  }
+
+  /**
+   * Packs the channel planes into ARGB pixels.
+   *
+   * @return a new array of ARGB pixels in row-major order.
+   */
+  int[] toInterleaved() {
+    byte[] red = planes[0];
+    byte[] green = planes[1];
+    byte[] blue = planes[2];
+    byte[] alpha = planes[3];
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = ((alpha[i] & 0xFF) << 24) | ((red[i] & 0xFF) << 16)
+          | ((green[i] & 0xFF) << 8) | (blue[i] & 0xFF);
+    }
+    return pixels;
+  }
+}
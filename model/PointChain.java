@@ -0,0 +1,195 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The `PointChain` class represents a run of per-pixel operations applied one after another,
+ * whose intermediate images are never needed: point operations, color matrices and color
+ * correction. The run is applied in a single pass over the pixels, without creating the images
+ * between its steps.
+ *
+ * <p>Consecutive point operations are composed into one lookup table per channel. Color
+ * correction depends on the histograms of its input, which are those of the source pushed through
+ * the preceding tables, so it becomes a point operation as well. Only when a color matrix comes
+ * before a color correction are the pixels transformed so far counted first. A chain is
+ * immutable, so each step returns a new chain.
+ */
+public final class PointChain {
+
+  private final List<Object> steps;
+
+  /**
+   * Constructs an empty chain.
+   */
+  public PointChain() {
+    this(Collections.emptyList());
+  }
+
+  private PointChain(List<Object> steps) {
+    this.steps = steps;
+  }
+
+  private PointChain with(Object step) {
+    List<Object> extended = new ArrayList<>(steps);
+    extended.add(step);
+    return new PointChain(Collections.unmodifiableList(extended));
+  }
+
+  /**
+   * Appends a point operation to this chain.
+   *
+   * @param operation the point operation.
+   * @return the extended chain.
+   */
+  public PointChain then(PointOperation operation) {
+    return with(operation);
+  }
+
+  /**
+   * Appends a color matrix to this chain.
+   *
+   * @param matrix the color matrix.
+   * @return the extended chain.
+   */
+  public PointChain then(ColorMatrix matrix) {
+    return with(matrix);
+  }
+
+  /**
+   * Appends the steps of another chain to this chain.
+   *
+   * @param chain the chain whose steps follow those of this chain.
+   * @return the extended chain.
+   */
+  public PointChain then(PointChain chain) {
+    List<Object> extended = new ArrayList<>(steps);
+    extended.addAll(chain.steps);
+    return new PointChain(Collections.unmodifiableList(extended));
+  }
+
+  /**
+   * Appends a color correction to this chain, which aligns the peaks of the histograms of the
+   * image produced by the steps before it.
+   *
+   * @return the extended chain.
+   */
+  public PointChain thenColorCorrect() {
+    return with(ColorCorrection.INSTANCE);
+  }
+
+  /**
+   * Gets the number of steps in this chain.
+   *
+   * @return the number of steps.
+   */
+  public int size() {
+    return steps.size();
+  }
+
+  /**
+   * Applies the steps of this chain to an image.
+   *
+   * @param image the image.
+   * @param pool  the pool counting the histograms of large images, or null to count them on the
+   *              calling thread.
+   * @return a new image holding the results of the last step.
+   */
+  Image apply(Image image, ForkJoinPool pool) {
+    return apply(image, null, pool);
+  }
+
+  /**
+   * Applies the steps of this chain to a rectangle of an image. Color corrections align the
+   * histograms of the whole image, so the rectangle gets the pixels the chain gives for the whole
+   * image. Only a color correction after a color matrix needs the whole image transformed.
+   *
+   * @param image  the image.
+   * @param bounds the column, row, width and height of the rectangle, or null for the whole
+   *               image.
+   * @param pool   the pool counting the histograms of large images, or null to count them on the
+   *               calling thread.
+   * @return a new image the size of the rectangle, holding the results of the last step.
+   */
+  Image apply(Image image, int[] bounds, ForkJoinPool pool) {
+    List<Object> stages = new ArrayList<>();
+    PointOperation pending = null;
+    int[][] sourceHistograms = null;
+    for (Object step : steps) {
+      if (step instanceof PointOperation) {
+        pending = pending == null ? (PointOperation) step : pending.andThen((PointOperation) step);
+      } else if (step instanceof ColorMatrix) {
+        if (pending != null) {
+          stages.add(pending);
+          pending = null;
+        }
+        stages.add(step);
+      } else {
+        int[][] histograms;
+        if (stages.isEmpty()) {
+          if (sourceHistograms == null) {
+            sourceHistograms = Histograms.count(image, pool);
+          }
+          histograms = pending == null ? sourceHistograms : pending.map(sourceHistograms);
+        } else {
+          // A color matrix mixes the channels, so the histograms of its results must be counted
+          if (pending != null) {
+            stages.add(pending);
+            pending = null;
+          }
+          image = evaluate(image, stages);
+          stages.clear();
+          histograms = Histograms.count(image, pool);
+          sourceHistograms = histograms;
+        }
+        PointOperation correction = PointOperation.colorCorrect(histograms);
+        pending = pending == null ? correction : pending.andThen(correction);
+      }
+    }
+    if (pending != null) {
+      stages.add(pending);
+    }
+    if (bounds != null) {
+      image = image.cropView(bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+    if (stages.isEmpty()) {
+      return image.share();
+    }
+    if (stages.size() == 1 && stages.get(0) instanceof PointOperation) {
+      return ((PointOperation) stages.get(0)).apply(image);
+    }
+    return evaluate(image, stages);
+  }
+
+  private static Image evaluate(Image image, List<Object> stages) {
+    int count = stages.size();
+    PointOperation[] operations = new PointOperation[count];
+    ColorMatrix[] matrices = new ColorMatrix[count];
+    for (int k = 0; k < count; k++) {
+      if (stages.get(k) instanceof PointOperation) {
+        operations[k] = (PointOperation) stages.get(k);
+      } else {
+        matrices[k] = (ColorMatrix) stages.get(k);
+      }
+    }
+    int[] dst = image.mapPixels((src, mapped) -> {
+      for (int i = 0; i < src.length; i++) {
+        int argb = src[i];
+        for (int k = 0; k < count; k++) {
+          argb = operations[k] != null ? operations[k].apply(argb) : matrices[k].apply(argb);
+        }
+        mapped[i] = argb;
+      }
+    });
+    return new Image(image.getWidth(), image.getHeight(), dst);
+  }
+
+  /**
+   * The marker of a color correction step.
+   */
+  private enum ColorCorrection {
+    INSTANCE
+  }
+}
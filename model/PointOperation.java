@@ -0,0 +1,299 @@
+package model;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The `PointOperation` class represents an operation that maps each value of the red, green and
+ * blue channels to a new value, independently of every other pixel, such as brightening, levels
+ * adjustment or a tone curve. Alpha is kept as it is.
+ *
+ * <p>The curve of each channel is evaluated once for all 256 values into a lookup table, so
+ * applying the operation costs one table lookup per channel of each pixel however expensive the
+ * curve is. Planar images are mapped plane by plane, and interleaved images pixel by pixel with
+ * tables that already hold each value shifted into place, so neither layout is converted.
+ */
+public final class PointOperation {
+
+  /**
+   * Inverts every channel, as in a photographic negative.
+   */
+  public static final PointOperation INVERT = of(value -> 255 - value);
+
+  private final byte[][] tables;
+  // The tables shifted to the positions of red, green and blue in a packed ARGB int
+  private final int[][] packed;
+
+  private PointOperation(byte[][] tables) {
+    this.tables = tables;
+    this.packed = new int[3][256];
+    for (int c = 0; c < 3; c++) {
+      int position = 16 - 8 * c;
+      for (int value = 0; value < 256; value++) {
+        packed[c][value] = (tables[c][value] & 0xFF) << position;
+      }
+    }
+  }
+
+  private static PointOperation tabulate(IntUnaryOperator... curves) {
+    byte[][] tables = new byte[3][256];
+    for (int c = 0; c < 3; c++) {
+      for (int value = 0; value < 256; value++) {
+        int mapped = curves[c].applyAsInt(value);
+        if (mapped < 0 || mapped > 255) {
+          throw new IllegalArgumentException("A point operation must map to [0, 255]: " + value
+              + " becomes " + mapped);
+        }
+        tables[c][value] = (byte) mapped;
+      }
+    }
+    return new PointOperation(tables);
+  }
+
+  /**
+   * Creates an operation that maps every channel with the same curve.
+   *
+   * @param curve the curve, mapping each value in [0, 255] to a value in [0, 255].
+   * @return the operation.
+   * @throws IllegalArgumentException if the curve maps a value outside [0, 255].
+   */
+  public static PointOperation of(IntUnaryOperator curve) {
+    return tabulate(curve, curve, curve);
+  }
+
+  /**
+   * Creates an operation that maps each channel with its own curve.
+   *
+   * @param red   the curve of the red channel.
+   * @param green the curve of the green channel.
+   * @param blue  the curve of the blue channel.
+   * @return the operation.
+   * @throws IllegalArgumentException if a curve maps a value outside [0, 255].
+   */
+  public static PointOperation of(IntUnaryOperator red, IntUnaryOperator green,
+      IntUnaryOperator blue) {
+    return tabulate(red, green, blue);
+  }
+
+  /**
+   * Creates an operation that adds a constant to every channel, truncating and then clamping the
+   * results.
+   *
+   * @param factor the constant to be added.
+   * @return the operation.
+   */
+  public static PointOperation brighten(float factor) {
+    return of(value -> (int) Math.min(255, Math.max(0, value + factor)));
+  }
+
+  /**
+   * Creates an operation that adds a constant of its own to each channel, clamping the results,
+   * as color correction does.
+   *
+   * @param red   the constant added to the red channel.
+   * @param green the constant added to the green channel.
+   * @param blue  the constant added to the blue channel.
+   * @return the operation.
+   */
+  public static PointOperation offsets(int red, int green, int blue) {
+    return of(value -> clamp(value + red), value -> clamp(value + green),
+        value -> clamp(value + blue));
+  }
+
+  /**
+   * Creates the operation that color correction applies to an image with the given histograms:
+   * each channel is shifted so that its most frequent value, ignoring the ten values at each end
+   * of the range, moves to the average of the three.
+   *
+   * @param histograms the number of pixels with each value, indexed by channel and then value.
+   * @return the operation.
+   */
+  public static PointOperation colorCorrect(int[][] histograms) {
+    int redPeak = findPeak(histograms[0]);
+    int greenPeak = findPeak(histograms[1]);
+    int bluePeak = findPeak(histograms[2]);
+    int averagePeak = Math.round((float) (redPeak + greenPeak + bluePeak) / 3);
+    return offsets(averagePeak - redPeak, averagePeak - greenPeak, averagePeak - bluePeak);
+  }
+
+  private static int findPeak(int[] histogram) {
+    int peakValue = 0;
+    int peakIndex = 0;
+    for (int i = 11; i <= 244; i++) {
+      if (histogram[i] > peakValue) {
+        peakValue = histogram[i];
+        peakIndex = i;
+      }
+    }
+    return peakIndex;
+  }
+
+  /**
+   * Creates an operation that keeps a single channel and sets the other two to zero, as the red,
+   * green and blue component commands do.
+   *
+   * @param channel the channel to keep, 0 for red, 1 for green and 2 for blue.
+   * @return the operation.
+   */
+  public static PointOperation component(int channel) {
+    IntUnaryOperator keep = value -> value;
+    IntUnaryOperator zero = value -> 0;
+    return of(channel == 0 ? keep : zero, channel == 1 ? keep : zero, channel == 2 ? keep : zero);
+  }
+
+  /**
+   * Creates an operation that adjusts the levels of every channel with the quadratic curve through
+   * the black, mid and white points, which are mapped to 0, 128 and 255.
+   *
+   * @param b the black point.
+   * @param m the mid point.
+   * @param w the white point.
+   * @return the operation.
+   */
+  public static PointOperation levels(int b, int m, int w) {
+    double a = Math.pow(b, 2) * (m - w) - b * (Math.pow(m, 2)
+        - Math.pow(w, 2)) + w * Math.pow(m, 2) - m * Math.pow(w, 2);
+    double aA = -b * (128 - 255) + 128 * w - 255 * m;
+    double aB = Math.pow(b, 2) * (128 - 255) + 255 * Math.pow(m, 2) - 128 * Math.pow(w, 2);
+    double aC =
+        Math.pow(b, 2) * (255 * m - 128 * w) - b * (255 * Math.pow(m, 2) - 128 * Math.pow(w, 2));
+    double aFraction = aA / a;
+    double bFraction = aB / a;
+    double cFraction = aC / a;
+    return of(x -> Math.min(255, Math.max(0, (int) (aFraction * x * x + bFraction * x
+        + cFraction))));
+  }
+
+  /**
+   * Creates an operation that applies a gamma curve to every channel: each value v becomes
+   * 255 * (v / 255)^(1 / gamma), rounded, so a gamma above 1 brightens the midtones.
+   *
+   * @param gamma the gamma, a positive number.
+   * @return the operation.
+   * @throws IllegalArgumentException if the gamma is not a positive number.
+   */
+  public static PointOperation gamma(double gamma) {
+    if (!(gamma > 0) || Double.isInfinite(gamma)) {
+      throw new IllegalArgumentException("The gamma must be a positive number: " + gamma);
+    }
+    return of(value -> (int) Math.round(255 * Math.pow(value / 255.0, 1 / gamma)));
+  }
+
+  /**
+   * Creates an operation that scales the distance of every channel from the middle of the range,
+   * rounding and clamping the results. A factor above 1 raises the contrast, and a factor below 1
+   * lowers it.
+   *
+   * @param factor the factor, a number that is not negative.
+   * @return the operation.
+   * @throws IllegalArgumentException if the factor is negative or not a number.
+   */
+  public static PointOperation contrast(double factor) {
+    if (!(factor >= 0) || Double.isInfinite(factor)) {
+      throw new IllegalArgumentException("The contrast must be a nonnegative number: " + factor);
+    }
+    return of(value -> clamp((int) Math.round((value - 127.5) * factor + 127.5)));
+  }
+
+  private static int clamp(int value) {
+    return Math.min(255, Math.max(0, value));
+  }
+
+  /**
+   * Gets the value a channel value is mapped to.
+   *
+   * @param channel the channel, 0 for red, 1 for green and 2 for blue.
+   * @param value   the value, in [0, 255].
+   * @return the mapped value.
+   */
+  public int map(int channel, int value) {
+    return tables[channel][value] & 0xFF;
+  }
+
+  /**
+   * Composes this operation with another one, applied to its results.
+   *
+   * @param next the operation applied after this one.
+   * @return an operation with the effect of both.
+   */
+  public PointOperation andThen(PointOperation next) {
+    byte[][] composed = new byte[3][256];
+    for (int c = 0; c < 3; c++) {
+      for (int value = 0; value < 256; value++) {
+        composed[c][value] = next.tables[c][tables[c][value] & 0xFF];
+      }
+    }
+    return new PointOperation(composed);
+  }
+
+  /**
+   * Gets the histograms of the image this operation produces from an image with the given
+   * histograms, without looking at its pixels.
+   *
+   * @param histograms the number of pixels with each value, indexed by channel and then value.
+   * @return the histograms of the mapped image.
+   */
+  int[][] map(int[][] histograms) {
+    int[][] mapped = new int[3][256];
+    for (int c = 0; c < 3; c++) {
+      for (int value = 0; value < 256; value++) {
+        mapped[c][tables[c][value] & 0xFF] += histograms[c][value];
+      }
+    }
+    return mapped;
+  }
+
+  /**
+   * Maps the channels of a single pixel.
+   *
+   * @param argb the pixel.
+   * @return the mapped pixel.
+   */
+  int apply(int argb) {
+    return (argb & 0xFF000000) | packed[0][(argb >>> 16) & 0xFF]
+        | packed[1][(argb >>> 8) & 0xFF] | packed[2][argb & 0xFF];
+  }
+
+  /**
+   * Applies this operation to an image, in the layout the image already holds.
+   *
+   * @param image the image.
+   * @return a new image holding the mapped pixels.
+   */
+  Image apply(Image image) {
+    Image mapped = map(image);
+    int[][] histograms = image.cachedHistograms();
+    if (histograms != null) {
+      // The counts of the mapped values follow from the counts of the source without a scan
+      mapped.cacheHistograms(map(histograms));
+    }
+    return mapped;
+  }
+
+  private Image map(Image image) {
+    if (!image.hasLayout(ImageLayout.INTERLEAVED) && image.hasLayout(ImageLayout.PLANAR)) {
+      PlanarImage planes = image.planar();
+      return new Image(new PlanarImage(planes.getWidth(), planes.getHeight(),
+          map(planes.plane(0), tables[0]), map(planes.plane(1), tables[1]),
+          map(planes.plane(2), tables[2]), planes.plane(3)));
+    }
+    int[] red = packed[0];
+    int[] green = packed[1];
+    int[] blue = packed[2];
+    int[] dst = image.mapPixels((src, mapped) -> {
+      for (int i = 0; i < src.length; i++) {
+        int argb = src[i];
+        mapped[i] = (argb & 0xFF000000) | red[(argb >>> 16) & 0xFF]
+            | green[(argb >>> 8) & 0xFF] | blue[argb & 0xFF];
+      }
+    });
+    return new Image(image.getWidth(), image.getHeight(), dst);
+  }
+
+  private static byte[] map(byte[] plane, byte[] table) {
+    byte[] mapped = new byte[plane.length];
+    for (int i = 0; i < plane.length; i++) {
+      mapped[i] = table[plane[i] & 0xFF];
+    }
+    return mapped;
+  }
+}
@@ -0,0 +1,75 @@
+package model;
+
+/**
+ * The `Region` class represents the rectangle of an image an operation is restricted to. The
+ * operation computes only the pixels inside the rectangle, and the pixels outside it are those of
+ * the source image. Each pixel inside is the one the operation gives for the whole image, so a
+ * filter reads the pixels around the rectangle that its kernel reaches.
+ *
+ * <p>A region is either a fixed rectangle, or the leftmost columns covering a percentage of the
+ * width of the image, as the split preview of a command shows.
+ */
+public final class Region {
+
+  private final int x;
+  private final int y;
+  private final int width;
+  private final int height;
+  // The percentage of the columns, or a negative number for a fixed rectangle
+  private final float percentage;
+
+  private Region(int x, int y, int width, int height, float percentage) {
+    this.x = x;
+    this.y = y;
+    this.width = width;
+    this.height = height;
+    this.percentage = percentage;
+  }
+
+  /**
+   * Creates a region of a fixed rectangle.
+   *
+   * @param x      the column of the top-left corner of the rectangle.
+   * @param y      the row of the top-left corner of the rectangle.
+   * @param width  the number of columns of the rectangle.
+   * @param height the number of rows of the rectangle.
+   * @return the region.
+   */
+  public static Region of(int x, int y, int width, int height) {
+    if (x < 0 || y < 0 || width < 0 || height < 0) {
+      throw new IllegalArgumentException("Invalid region!");
+    }
+    return new Region(x, y, width, height, -1);
+  }
+
+  /**
+   * Creates a region of the leftmost columns of an image, covering a percentage of its width
+   * rounded up, as the chop command keeps them.
+   *
+   * @param percentage the percentage of the width, between 0 and 100.
+   * @return the region.
+   */
+  public static Region leftColumns(float percentage) {
+    if (percentage < 0 || percentage > 100) {
+      throw new IllegalArgumentException("Invalid percentage!");
+    }
+    return new Region(0, 0, 0, 0, percentage);
+  }
+
+  /**
+   * Places this region on an image of the given size.
+   *
+   * @param imageWidth  the number of columns of the image.
+   * @param imageHeight the number of rows of the image.
+   * @return the column, row, width and height of the rectangle.
+   */
+  int[] bounds(int imageWidth, int imageHeight) {
+    if (percentage >= 0) {
+      return new int[]{0, 0, (int) Math.ceil(imageWidth * (percentage / 100)), imageHeight};
+    }
+    if (x + width > imageWidth || y + height > imageHeight) {
+      throw new IllegalArgumentException("The region does not fit in the image!");
+    }
+    return new int[]{x, y, width, height};
+  }
+}
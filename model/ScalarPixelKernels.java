@@ -0,0 +1,130 @@
+package model;
+
+/**
+ * The `ScalarPixelKernels` class implements the pixel kernels one value at a time. The vector
+ * implementation uses its range methods for the pixels left over after the last full vector.
+ */
+final class ScalarPixelKernels extends PixelKernels {
+
+  @Override
+  public String getName() {
+    return "scalar";
+  }
+
+  @Override
+  public void luma(int[] src, int[] dst) {
+    luma(src, dst, 0, src.length);
+  }
+
+  void luma(int[] src, int[] dst, int from, int to) {
+    for (int i = from; i < to; i++) {
+      int argb = src[i];
+      double weightedSum = 0.2126 * Image.red(argb)
+          + 0.7152 * Image.green(argb)
+          + 0.0722 * Image.blue(argb);
+      int value = (int) Math.min(255, Math.max(0, weightedSum));
+      dst[i] = Image.argb(Image.alpha(argb), value, value, value);
+    }
+  }
+
+  @Override
+  public void greys(int[] src, int[] value, int[] intensity, int[] luma) {
+    greys(src, value, intensity, luma, 0, src.length);
+  }
+
+  void greys(int[] src, int[] value, int[] intensity, int[] luma, int from, int to) {
+    for (int i = from; i < to; i++) {
+      int argb = src[i];
+      int alpha = argb & 0xFF000000;
+      int red = Image.red(argb);
+      int green = Image.green(argb);
+      int blue = Image.blue(argb);
+      // A grey pixel repeats its value in each channel
+      if (value != null) {
+        value[i] = alpha | Math.max(Math.max(red, green), blue) * 0x010101;
+      }
+      if (intensity != null) {
+        // The sum is an integer, so dividing it exactly truncates like the average does
+        intensity[i] = alpha | (red + green + blue) / 3 * 0x010101;
+      }
+      if (luma != null) {
+        double weightedSum = 0.2126 * red + 0.7152 * green + 0.0722 * blue;
+        luma[i] = alpha | (int) Math.min(255, Math.max(0, weightedSum)) * 0x010101;
+      }
+    }
+  }
+
+  @Override
+  public void transform(int[] src, int[] dst, ColorMatrix matrix) {
+    transform(src, dst, matrix, 0, src.length);
+  }
+
+  void transform(int[] src, int[] dst, ColorMatrix matrix, int from, int to) {
+    int[] k = matrix.coefficients();
+    if (k == null) {
+      for (int i = from; i < to; i++) {
+        dst[i] = exact(src[i], matrix);
+      }
+      return;
+    }
+    // The coefficients are read into locals once, which the compiler keeps in registers
+    int k0 = k[0], k1 = k[1], k2 = k[2], k3 = k[3];
+    int k4 = k[4], k5 = k[5], k6 = k[6], k7 = k[7];
+    int k8 = k[8], k9 = k[9], k10 = k[10], k11 = k[11];
+    int shift = matrix.shift();
+    int guard = matrix.guard();
+    int fraction = (1 << shift) - 1;
+    int span = 2 * guard;
+    for (int i = from; i < to; i++) {
+      int argb = src[i];
+      int red = Image.red(argb);
+      int green = Image.green(argb);
+      int blue = Image.blue(argb);
+      int outRed = k0 * red + k1 * green + k2 * blue + k3;
+      int outGreen = k4 * red + k5 * green + k6 * blue + k7;
+      int outBlue = k8 * red + k9 * green + k10 * blue + k11;
+      // Negative when any sum lies within the guard distance of an integer
+      int near = (((outRed + guard) & fraction) - span) | (((outGreen + guard) & fraction) - span)
+          | (((outBlue + guard) & fraction) - span);
+      if (near < 0) {
+        dst[i] = exact(argb, matrix);
+        continue;
+      }
+      dst[i] = (argb & 0xFF000000) | clamp(outRed >> shift) << 16
+          | clamp(outGreen >> shift) << 8 | clamp(outBlue >> shift);
+    }
+  }
+
+  private static int exact(int argb, ColorMatrix matrix) {
+    return Image.argb(Image.alpha(argb), matrix.exact(0, argb), matrix.exact(1, argb),
+        matrix.exact(2, argb));
+  }
+
+  private static int clamp(int value) {
+    return Math.min(255, Math.max(0, value));
+  }
+
+  @Override
+  public void accumulate(int[] values, int valueIndex, int weight, int[] sums, int sumIndex,
+      int length) {
+    for (int k = 0; k < length; k++) {
+      sums[sumIndex + k] += values[valueIndex + k] * weight;
+    }
+  }
+
+  @Override
+  public void accumulate(int[] values, int valueIndex, double weight, double[] sums,
+      int sumIndex, int length) {
+    for (int k = 0; k < length; k++) {
+      sums[sumIndex + k] += values[valueIndex + k] * weight;
+    }
+  }
+
+  @Override
+  public void accumulate(double[] values, int valueIndex, double weight, double[] sums,
+      int sumIndex, int length) {
+    for (int k = 0; k < length; k++) {
+      sums[sumIndex + k] += values[valueIndex + k] * weight;
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The `VectorPixelKernels` class implements the pixel kernels with the vector API, processing as
+ * many pixels per instruction as the widest vectors of the processor hold. Each lane performs the
+ * same operations as the scalar loop, without fusing multiplies and adds, and the remaining pixels
+ * at the end of each run go through the scalar loop. The kernels where the vector loop measured
+ * slower than the scalar one delegate to it entirely.
+ *
+ * <p>This class must only be loaded when the {@code jdk.incubator.vector} module is present. It
+ * is compiled separately from the rest of the program, as {@link PixelKernels} describes.
+ */
+final class VectorPixelKernels extends PixelKernels {
+
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+  // Ints widened to doubles, one per double lane
+  private static final VectorSpecies<Integer> NARROW_INTS = VectorSpecies.of(int.class,
+      VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+  // The pixels the fused greyscale loops process before moving on, which stay in the L1 cache
+  private static final int GREYS_BLOCK = 2048;
+
+  private final ScalarPixelKernels scalar = new ScalarPixelKernels();
+
+  @Override
+  public String getName() {
+    return "vector (" + INTS.length() + " ints per vector)";
+  }
+
+  @Override
+  public void luma(int[] src, int[] dst) {
+    int bound = NARROW_INTS.loopBound(src.length);
+    luma(src, dst, 0, bound);
+    scalar.luma(src, dst, bound, src.length);
+  }
+
+  @Override
+  public void greys(int[] src, int[] value, int[] intensity, int[] luma) {
+    // One loop per result keeps each small enough to be compiled into vector instructions, and
+    // running them a block at a time reads the pixels from memory once, for the first of them
+    int bound = NARROW_INTS.loopBound(src.length);
+    for (int from = 0; from < bound; from += GREYS_BLOCK) {
+      int to = Math.min(from + GREYS_BLOCK, bound);
+      if (value != null) {
+        value(src, value, from, to);
+      }
+      if (intensity != null) {
+        intensity(src, intensity, from, to);
+      }
+      if (luma != null) {
+        luma(src, luma, from, to);
+      }
+    }
+    scalar.greys(src, value, intensity, luma, bound, src.length);
+  }
+
+  private static void value(int[] src, int[] dst, int from, int to) {
+    for (int i = from; i < to; i += NARROW_INTS.length()) {
+      IntVector argb = IntVector.fromArray(NARROW_INTS, src, i);
+      IntVector max = argb.lanewise(VectorOperators.ASHR, 16).and(0xFF)
+          .max(argb.lanewise(VectorOperators.ASHR, 8).and(0xFF))
+          .max(argb.and(0xFF));
+      pack(argb, max, max, max).intoArray(dst, i);
+    }
+  }
+
+  private static void intensity(int[] src, int[] dst, int from, int to) {
+    for (int i = from; i < to; i += NARROW_INTS.length()) {
+      IntVector argb = IntVector.fromArray(NARROW_INTS, src, i);
+      IntVector sum = argb.lanewise(VectorOperators.ASHR, 16).and(0xFF)
+          .add(argb.lanewise(VectorOperators.ASHR, 8).and(0xFF))
+          .add(argb.and(0xFF));
+      IntVector average = truncate(widen(sum).div(3));
+      pack(argb, average, average, average).intoArray(dst, i);
+    }
+  }
+
+  private static void luma(int[] src, int[] dst, int from, int to) {
+    for (int i = from; i < to; i += NARROW_INTS.length()) {
+      IntVector argb = IntVector.fromArray(NARROW_INTS, src, i);
+      DoubleVector weightedSum = widen(argb.lanewise(VectorOperators.ASHR, 16).and(0xFF))
+          .mul(0.2126)
+          .add(widen(argb.lanewise(VectorOperators.ASHR, 8).and(0xFF)).mul(0.7152))
+          .add(widen(argb.and(0xFF)).mul(0.0722));
+      IntVector value = truncate(weightedSum.max(0).min(255));
+      pack(argb, value, value, value).intoArray(dst, i);
+    }
+  }
+
+  @Override
+  public void transform(int[] src, int[] dst, ColorMatrix matrix) {
+    // Lanes of doubles evaluate the floating-point formula itself, which needs no guard and
+    // measured faster than fixed-point sums in int lanes. One output channel per loop keeps each
+    // loop small enough for the compiler to inline every vector operation in it
+    int bound = NARROW_INTS.loopBound(src.length);
+    for (int c = 0; c < 3; c++) {
+      transform(src, dst, matrix, c, bound);
+    }
+    scalar.transform(src, dst, matrix, bound, src.length);
+  }
+
+  private static void transform(int[] src, int[] dst, ColorMatrix matrix, int channel,
+      int bound) {
+    double[] weights = matrix.weights();
+    int row = channel * 4;
+    double red = weights[row];
+    double green = weights[row + 1];
+    double blue = weights[row + 2];
+    double offset = weights[row + 3];
+    double divisor = matrix.divisor();
+    int position = 16 - 8 * channel;
+    for (int i = 0; i < bound; i += NARROW_INTS.length()) {
+      IntVector argb = IntVector.fromArray(NARROW_INTS, src, i);
+      DoubleVector sum = widen(argb.lanewise(VectorOperators.ASHR, 16).and(0xFF)).mul(red)
+          .add(widen(argb.lanewise(VectorOperators.ASHR, 8).and(0xFF)).mul(green))
+          .add(widen(argb.and(0xFF)).mul(blue))
+          .add(offset)
+          .div(divisor);
+      IntVector value = truncate(sum.max(0).min(255)).lanewise(VectorOperators.LSHL, position);
+      IntVector rest = channel == 0 ? argb.and(0xFF000000) : IntVector.fromArray(NARROW_INTS,
+          dst, i);
+      rest.or(value).intoArray(dst, i);
+    }
+  }
+
+  @Override
+  public void accumulate(int[] values, int valueIndex, int weight, int[] sums, int sumIndex,
+      int length) {
+    // The runs are short, and the scalar loop is already auto-vectorized by the compiler
+    scalar.accumulate(values, valueIndex, weight, sums, sumIndex, length);
+  }
+
+  @Override
+  public void accumulate(int[] values, int valueIndex, double weight, double[] sums,
+      int sumIndex, int length) {
+    int bound = NARROW_INTS.loopBound(length);
+    int k = 0;
+    for (; k < bound; k += NARROW_INTS.length()) {
+      DoubleVector sum = DoubleVector.fromArray(DOUBLES, sums, sumIndex + k);
+      sum.add(widen(IntVector.fromArray(NARROW_INTS, values, valueIndex + k)).mul(weight))
+          .intoArray(sums, sumIndex + k);
+    }
+    scalar.accumulate(values, valueIndex + k, weight, sums, sumIndex + k, length - k);
+  }
+
+  @Override
+  public void accumulate(double[] values, int valueIndex, double weight, double[] sums,
+      int sumIndex, int length) {
+    int bound = DOUBLES.loopBound(length);
+    int k = 0;
+    for (; k < bound; k += DOUBLES.length()) {
+      DoubleVector sum = DoubleVector.fromArray(DOUBLES, sums, sumIndex + k);
+      sum.add(DoubleVector.fromArray(DOUBLES, values, valueIndex + k).mul(weight))
+          .intoArray(sums, sumIndex + k);
+    }
+    scalar.accumulate(values, valueIndex + k, weight, sums, sumIndex + k, length - k);
+  }
+
+  private static DoubleVector widen(IntVector values) {
+    return (DoubleVector) values.convertShape(VectorOperators.I2D, DOUBLES, 0);
+  }
+
+  /*
+   * Floating-point to int conversions are not compiled to vector instructions on every runtime,
+   * so values already clamped to [0, 255] are truncated by adding a power of two that pushes
+   * their fraction out of the mantissa, and reading the integer back from the low bits.
+   */
+
+  private static IntVector truncate(DoubleVector values) {
+    DoubleVector rounded = values.add(0x1p52).sub(0x1p52);
+    DoubleVector floor = rounded.lanewise(VectorOperators.SUB, 1.0,
+        rounded.compare(VectorOperators.GT, values));
+    return (IntVector) floor.add(0x1p52).viewAsIntegralLanes()
+        .convertShape(VectorOperators.L2I, NARROW_INTS, 0);
+  }
+
+  private static IntVector pack(IntVector argb, IntVector red, IntVector green, IntVector blue) {
+    return argb.and(0xFF000000)
+        .or(red.lanewise(VectorOperators.LSHL, 16))
+        .or(green.lanewise(VectorOperators.LSHL, 8))
+        .or(blue);
+  }
+}
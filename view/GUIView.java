@@ -2,7 +2,9 @@ package view;
 
 import controller.Features;
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.FlowLayout;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -26,6 +28,7 @@ public class GUIView extends JFrame implements IGUIView{
   private JLabel fileOpenDisplay;
   private JLabel fileSaveDisplay;
   private JLabel imageLabel;
+  private JLabel histogramLabel;
 
   private final JPanel mainPanel;
 
@@ -103,6 +106,12 @@ public class GUIView extends JFrame implements IGUIView{
     imagePanel.add(imageLabel);
     mainPanel.add(imagePanel);
 
+    //histogram panel
+    JPanel histogramPanel = new JPanel();
+    histogramLabel = new JLabel();
+    histogramPanel.add(histogramLabel);
+    mainPanel.add(histogramPanel);
+
     setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
   }
 
@@ -157,7 +166,43 @@ public class GUIView extends JFrame implements IGUIView{
 
   @Override
   public void showHistogram(String imageName) {
+    int[][] histograms = rom.getHistograms(imageName);
+    if (histograms != null) {
+      histogramLabel.setIcon(new ImageIcon(chart(histograms)));
+    }
+  }
 
+  /**
+   * Draws the histograms of the red, green and blue channels as a 256 by 256 line chart over a
+   * light gray grid, each count scaled by the largest count of any channel.
+   */
+  private static BufferedImage chart(int[][] histograms) {
+    BufferedImage chart = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D graphics = chart.createGraphics();
+    graphics.setColor(Color.WHITE);
+    graphics.fillRect(0, 0, 256, 256);
+    graphics.setColor(Color.LIGHT_GRAY);
+    for (int i = 0; i < 256; i += 16) {
+      graphics.drawLine(i, 0, i, 255);
+      graphics.drawLine(0, i, 255, i);
+    }
+    int maxCount = 1;
+    for (int[] histogram : histograms) {
+      for (int count : histogram) {
+        maxCount = Math.max(maxCount, count);
+      }
+    }
+    Color[] colors = {Color.RED, Color.GREEN, Color.BLUE};
+    for (int c = 0; c < 3; c++) {
+      graphics.setColor(colors[c]);
+      for (int x = 0; x < 255; x++) {
+        int y1 = 255 - (int) ((double) histograms[c][x] / maxCount * 255);
+        int y2 = 255 - (int) ((double) histograms[c][x + 1] / maxCount * 255);
+        graphics.drawLine(x, y1, x + 1, y2);
+      }
+    }
+    graphics.dispose();
+    return chart;
   }
 
   @Override